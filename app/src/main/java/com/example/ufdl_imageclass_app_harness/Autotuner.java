@@ -0,0 +1,271 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/***
+ * A class to find the fastest way of running a model on this device. The first time a model is loaded it
+ * times a short sweep of execution plans on a synthetic frame: thread counts, XNNPACK on or off for TensorFlow
+ * Lite, the model's alternative files (e.g. the TensorFlow Lite export of a PyTorch model) and fixed input
+ * resolutions. Only plans meeting the minAccuracy constraint of the model JSON are considered, using the
+ * accuracies declared for the model, its alternatives and their resolutions. The winning plan is persisted
+ * keyed by the model's content hash and the device fingerprint, so later loads apply it straight away.
+ *
+ * The thread count and XNNPACK are swept first at the native resolution, then the resolutions are swept with
+ * the best of those, to keep the sweep short. Every plan is timed at a fixed resolution, so the ResolutionScaler
+ * doesn't switch resolutions while it is timed. PyTorch models are loaded once for the whole thread sweep, since
+ * their thread count is process wide, and the previous thread count is restored afterwards. For the same reason,
+ * and so the timings aren't skewed, nothing else should classify while a model is tuned.
+ */
+
+public class Autotuner {
+    private static final String PREFERENCES = "autotuner";
+    private static final String PLAN_PREFIX = "plan2:";  //plans of version 1 were timed while live frames were classified
+    private static final int FRAME_WIDTH = 640;
+    private static final int FRAME_HEIGHT = 480;
+    private static final int WARMUP_RUNS = 2;
+    private static final int TIMED_RUNS = 5;
+
+    private final Context context;
+    private final SharedPreferences preferences;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private Bitmap frame;
+
+    /***
+     * Constructor to create an autotuner
+     * @param context the context
+     */
+    public Autotuner(Context context) {
+        this.context = context;
+        this.preferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    /***
+     * Method to get the persisted plan of a model
+     * @param details the details of the requested model
+     * @return the execution plan or null if the model hasn't been tuned on this device
+     */
+    public ExecutionPlan getPlan(ClassifierDetails details) {
+        String plan = preferences.getString(planKey(details.getName()), null);
+        if (plan == null) return null;
+
+        try {
+            return mapper.readValue(plan, ExecutionPlan.class);
+        } catch (IOException e) {
+            Log.e("TAG", "Error: Cannot read execution plan of " + details.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /***
+     * Method to time the candidate plans of a model and persist the fastest one
+     * @param details the details of the requested model
+     * @return the fastest plan meeting the accuracy constraint, or null if no candidate could be run
+     */
+    public ExecutionPlan tune(ClassifierDetails details) {
+        List<ClassifierDetails> models = new ArrayList<>();
+        models.add(details);
+        if (details.getAlternatives() != null) {
+            for (String alternative : details.getAlternatives()) {
+                ClassifierDetails alternativeDetails = ClassifierUtils.deserializeModelJSON(context, alternative);
+                if (alternativeDetails != null) models.add(alternativeDetails);
+            }
+        }
+
+        ExecutionPlan best = null;
+        int pyTorchThreads = PyTorchClassifier.getNumThreads();
+        try {
+            for (ClassifierDetails model : models) {
+                // an alternative with an unknown accuracy can't be shown to meet the constraint
+                if (model != details && details.getMinAccuracy() > 0 && model.getAccuracy() < details.getMinAccuracy()) continue;
+
+                ExecutionPlan modelBest = null;
+                if (ClassifierUtils.isPyTorchModel(model.getName())) {
+                    modelBest = timeThreadCounts(model);
+                } else {
+                    for (int threads : threadCounts()) {
+                        for (boolean xnnpack : new boolean[]{false, true}) {
+                            modelBest = faster(modelBest, time(model, new ExecutionPlan(model.getName(), threads, xnnpack, null)));
+                        }
+                    }
+                }
+                if (modelBest == null) continue;
+
+                if (model.getResolutions() != null) {
+                    for (InputResolution resolution : model.getResolutions()) {
+                        // without a declared accuracy a lower resolution would only trade accuracy for speed unchecked
+                        if (resolution.getAccuracy() <= 0 || resolution.getAccuracy() < details.getMinAccuracy()) continue;
+                        modelBest = faster(modelBest, time(model, new ExecutionPlan(model.getName(),
+                                modelBest.getNumThreads(), modelBest.getUseXnnpack(), resolution)));
+                    }
+                }
+                best = faster(best, modelBest);
+            }
+        } finally {
+            PyTorchClassifier.setNumThreads(pyTorchThreads);
+            if (frame != null) {
+                frame.recycle();
+                frame = null;
+            }
+        }
+
+        if (best != null) {
+            try {
+                preferences.edit().putString(planKey(details.getName()), mapper.writeValueAsString(best)).apply();
+            } catch (IOException e) {
+                Log.e("TAG", "Error: Cannot save execution plan of " + details.getName() + ": " + e.getMessage());
+            }
+            Log.i("Autotuner", details.getName() + ": " + best);
+        }
+        return best;
+    }
+
+    /***
+     * Method to time a plan on the synthetic frame. A plan with an adaptive resolution is timed at the model's
+     * native resolution.
+     * @param details the details of the plan's model
+     * @param plan the plan
+     * @return the plan with its median latency, or null if the plan could not be run
+     */
+    private ExecutionPlan time(ClassifierDetails details, ExecutionPlan plan) {
+        ExecutionPlan timedPlan = plan.getResolution() != null ? plan
+                : ExecutionPlan.atNativeResolution(details, plan.getNumThreads(), plan.getUseXnnpack());
+        Classifier classifier = null;
+        try {
+            classifier = Classifier.createInstance(context, details, timedPlan);
+            if (classifier == null) return null;
+            return time(classifier, plan);
+        } catch (RuntimeException e) {
+            // e.g. a delegate which isn't supported on this device
+            Log.e("TAG", "Error: Cannot run " + plan + ": " + e.getMessage());
+            return null;
+        } finally {
+            if (classifier != null) classifier.close();
+        }
+    }
+
+    /***
+     * Method to time every thread count on a PyTorch model, loaded once at its native resolution
+     * @param details the details of the model
+     * @return the fastest plan, or null if the model could not be run
+     */
+    private ExecutionPlan timeThreadCounts(ClassifierDetails details) {
+        Classifier classifier = null;
+        try {
+            classifier = Classifier.createInstance(context, details, ExecutionPlan.atNativeResolution(details, 0, false));
+            if (classifier == null) return null;
+
+            ExecutionPlan best = null;
+            for (int threads : threadCounts()) {
+                PyTorchClassifier.setNumThreads(threads);
+                best = faster(best, time(classifier, new ExecutionPlan(details.getName(), threads, false, null)));
+            }
+            return best;
+        } catch (RuntimeException e) {
+            Log.e("TAG", "Error: Cannot run " + details.getName() + ": " + e.getMessage());
+            return null;
+        } finally {
+            if (classifier != null) classifier.close();
+        }
+    }
+
+    /***
+     * Method to time a classifier on the synthetic frame
+     * @param classifier the classifier run according to the plan
+     * @param plan the plan, which is given the median latency
+     * @return the plan
+     */
+    private ExecutionPlan time(Classifier classifier, ExecutionPlan plan) {
+        Bitmap bitmap = syntheticFrame();
+        for (int i = 0; i < WARMUP_RUNS; i++) classifier.topKPredictions(bitmap);
+
+        long[] latencies = new long[TIMED_RUNS];
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            classifier.topKPredictions(bitmap);
+            latencies[i] = SystemClock.elapsedRealtimeNanos() - start;
+        }
+        Arrays.sort(latencies);
+        plan.setLatencyMs(latencies[TIMED_RUNS / 2] / 1e6f);
+        return plan;
+    }
+
+    /***
+     * Method to pick the faster of two plans
+     * @param a a plan or null
+     * @param b a plan or null
+     * @return the plan with the lower latency
+     */
+    private static ExecutionPlan faster(ExecutionPlan a, ExecutionPlan b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return b.getLatencyMs() < a.getLatencyMs() ? b : a;
+    }
+
+    /***
+     * Method to get the thread counts to sweep: 1, 2, 4, ... up to the number of cores
+     * @return the thread counts
+     */
+    private static List<Integer> threadCounts() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> counts = new ArrayList<>();
+        for (int threads = 1; threads < cores; threads *= 2) counts.add(threads);
+        counts.add(cores);
+        return counts;
+    }
+
+    /***
+     * Method to get a noise frame the size of a typical camera frame, so the timings include preprocessing
+     * @return the synthetic frame
+     */
+    private Bitmap syntheticFrame() {
+        if (frame == null) {
+            int[] pixels = new int[FRAME_WIDTH * FRAME_HEIGHT];
+            Random random = new Random(0);
+            for (int i = 0; i < pixels.length; i++) pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+            frame = Bitmap.createBitmap(pixels, FRAME_WIDTH, FRAME_HEIGHT, Bitmap.Config.ARGB_8888);
+        }
+        return frame;
+    }
+
+    /***
+     * Method to get the preference key of a model's plan on this device. The model is identified by its content
+     * hash, which is itself cached per app version since assets only change with the APK.
+     * @param model the name of the requested model
+     * @return the preference key
+     */
+    private String planKey(String model) {
+        return PLAN_PREFIX + Long.toHexString(modelHash(model)) + ":" + Build.FINGERPRINT;
+    }
+
+    /***
+     * Method to get the content hash of a model, computed once per app version
+     * @param model the model name
+     * @return the model identity hash, or a hash of the name alone if the model cannot be read
+     */
+    private long modelHash(String model) {
+        String key = "hash:" + model + ":" + ClassifierUtils.appVersion(context);
+        if (preferences.contains(key)) return preferences.getLong(key, 0);
+
+        long hash;
+        try {
+            hash = ClassifierUtils.modelIdentity(context, model);
+        } catch (IOException e) {
+            return ContentHash.update(ContentHash.SEED, model);
+        }
+        preferences.edit().putLong(key, hash).apply();
+        return hash;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.graphics.Bitmap;
+
+import android.util.SparseArray;
+
+import java.util.ArrayDeque;
+
+/***
+ * A pool of mutable bitmaps bucketed by size and config, so frames can be decoded into recycled bitmaps
+ * instead of allocating a new one per frame. The pool holds at most a fixed number of bytes; bitmaps
+ * released beyond the budget are recycled.
+ */
+
+public class BitmapPool {
+    private final long maxBytes;
+    private final SparseArray<ArrayDeque<Bitmap>> buckets = new SparseArray<>();
+    private long pooledBytes;
+    private long hits;
+    private long misses;
+
+    /***
+     * Constructor to create a bitmap pool
+     * @param maxBytes the maximum number of bytes held by idle bitmaps in the pool
+     */
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /***
+     * Method to get the bucket key of a bitmap size and config
+     * @param width the bitmap width
+     * @param height the bitmap height
+     * @param config the bitmap config
+     * @return the bucket key, packing widths and heights up to 16383 pixels and the config ordinal
+     */
+    private static int key(int width, int height, Bitmap.Config config) {
+        return (width << 17) | (height << 3) | config.ordinal();
+    }
+
+    /***
+     * Method to lease a mutable bitmap of the given size and config, reusing a pooled one if available
+     * @param width the bitmap width
+     * @param height the bitmap height
+     * @param config the bitmap config
+     * @return a mutable bitmap whose contents are undefined
+     */
+    public synchronized Bitmap lease(int width, int height, Bitmap.Config config) {
+        ArrayDeque<Bitmap> bucket = buckets.get(key(width, height, config));
+        Bitmap bitmap = bucket != null ? bucket.pollLast() : null;
+
+        if (bitmap != null) {
+            pooledBytes -= bitmap.getAllocationByteCount();
+            hits++;
+            return bitmap;
+        }
+
+        misses++;
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /***
+     * Method to return a leased bitmap to the pool. The bitmap must not be used by the caller afterwards.
+     * @param bitmap the bitmap to return
+     */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) return;
+
+        int size = bitmap.getAllocationByteCount();
+        if (pooledBytes + size > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+
+        int key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(key, bucket);
+        }
+        bucket.addLast(bitmap);
+        pooledBytes += size;
+    }
+
+    /***
+     * Method to get the fraction of leases served from the pool
+     * @return the hit rate between 0 and 1
+     */
+    public synchronized float getHitRate() {
+        long leases = hits + misses;
+        return leases == 0 ? 0.0f : (float) hits / leases;
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import java.util.List;
+
+/***
+ * A classifier which looks up a persistent PredictionCache before running the wrapped classifier on an encoded
+ * image, e.g. when an image folder is evaluated again. Images are keyed by a content hash of their encoded bytes,
+ * so cache hits skip both decoding and inference. Bitmaps, e.g. camera frames, hardly ever repeat exactly, so they
+ * are passed straight to the wrapped classifier without hashing their pixels.
+ */
+
+public class CachingClassifier extends Classifier {
+    private final Classifier classifier;
+    private final PredictionCache cache;
+    private final long modelHash;
+
+    //the inference time of the latest encoded image, or -1 if it was found in the cache
+    private long lastInferenceNanos = -1;
+
+    /***
+     * Constructor to create a caching classifier
+     * @param classifier the classifier to run on cache misses
+     * @param cache the prediction cache
+     * @param modelHash the identity of the classifier's model and its JSON (see ClassifierUtils.configurationIdentity)
+     */
+    public CachingClassifier(Classifier classifier, PredictionCache cache, long modelHash) {
+        super();
+        this.classifier = classifier;
+        this.cache = cache;
+        this.modelHash = modelHash;
+    }
+
+    /***
+     * A method to get the top 3 predictions of the wrapped classifier for a bitmap, which is not cached
+     * @param bitmap the bitmap to feed the image classifier
+     * @return A list containing the top 3 predictions
+     */
+    @Override
+    public List<Prediction> topKPredictions(Bitmap bitmap) {
+        return classifier.topKPredictions(bitmap);
+    }
+
+    /***
+     * A method to get the top 3 predictions for an encoded image (e.g. the bytes of a JPEG file). The image is
+     * only decoded if it is not in the cache.
+     * @param encoded the encoded image
+     * @return A list containing the top 3 predictions or null if the image could not be decoded
+     */
+    public List<Prediction> topKPredictions(byte[] encoded) {
+        long contentHash = ContentHash.of(encoded);
+        List<Prediction> predictions = cache.get(contentHash, modelHash);
+        lastInferenceNanos = -1;
+
+        if (predictions == null) {
+            Bitmap bitmap = ClassifierUtils.decodeImage(encoded);
+            if (bitmap == null) return null;
+
+            long start = SystemClock.elapsedRealtimeNanos();
+            predictions = classifier.topKPredictions(bitmap);
+            lastInferenceNanos = SystemClock.elapsedRealtimeNanos() - start;
+            bitmap.recycle();
+            cache.put(contentHash, modelHash, predictions);
+        }
+        return predictions;
+    }
+
+    /***
+     * Method to get the time the wrapped classifier took on the latest encoded image, leaving out decoding
+     * @return the inference time in nanoseconds, or -1 if the predictions came from the cache
+     */
+    public long getLastInferenceNanos() {
+        return lastInferenceNanos;
+    }
+
+    /***
+     * Method to get a single prediction of the wrapped classifier for a bitmap
+     * @param bitmap the bitmap to feed to the image classifier
+     * @return the top prediction or null if the wrapped classifier returned no predictions
+     */
+    @Override
+    public Prediction predict(Bitmap bitmap) {
+        List<Prediction> predictions = topKPredictions(bitmap);
+        return predictions.isEmpty() ? null : predictions.get(0);
+    }
+
+    /***
+     * Method to get the set of classes of the wrapped classifier
+     * @return String array of classes (image labels)
+     */
+    @Override
+    public String[] getClasses() {
+        return classifier.getClasses();
+    }
+
+    /***
+     * Method to get the labels the wrapped classifier's predictions can carry
+     * @return String array of labels or null if they aren't known until they are predicted
+     */
+    @Override
+    public String[] getPredictedLabels() {
+        return classifier.getPredictedLabels();
+    }
+
+    /***
+     * Method to get the label subset of the wrapped classifier
+     * @return the ascending class indices, or null if every class is predicted
+     */
+    @Override
+    public int[] getLabelSubset() {
+        return classifier.getLabelSubset();
+    }
+
+    /***
+     * Method to get the wrapped classifier
+     * @return the classifier run on cache misses
+     */
+    public Classifier getClassifier() {
+        return classifier;
+    }
+
+    /***
+     * Method to get the input size of the wrapped classifier
+     * @return the largest input side in pixels
+     */
+    @Override
+    public int getInputSize() {
+        return classifier.getInputSize();
+    }
+
+    /***
+     * Method to get the cache hit/miss statistics
+     * @return the formatted statistics
+     */
+    @Override
+    public String getStatistics() {
+        return cache.getStatistics();
+    }
+
+    /***
+     * Method to release the wrapped classifier. The cache is shared and closed by its owner.
+     */
+    @Override
+    public void close() {
+        classifier.close();
+    }
+}
@@ -4,46 +4,97 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.recyclerview.widget.RecyclerView;
 
+import android.content.SharedPreferences;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.ImageFormat;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
-import android.media.Image;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.AutoCompleteTextView;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
+import android.widget.TextView;
 import com.google.android.material.bottomsheet.BottomSheetBehavior;
 import com.otaliastudios.cameraview.CameraException;
 import com.otaliastudios.cameraview.CameraListener;
 import com.otaliastudios.cameraview.CameraOptions;
 import com.otaliastudios.cameraview.CameraView;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.util.Locale;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class CameraActivity extends AppCompatActivity implements AdapterView.OnItemClickListener {
+    //widest frame aspect ratio expected from the sensor, used to size frames so their short side covers the model input
+    private static final float MAX_FRAME_ASPECT_RATIO = 16.0f / 9.0f;
+    private static final int FRAME_PROCESSING_POOL_SIZE = 2;
+    private static final long BITMAP_POOL_BYTES = 32L * 1024 * 1024;
+    private static final long ARRAY_POOL_BYTES = 16L * 1024 * 1024;
+
+    //Intent extras to record camera frames to, or replay them from, a file in the app's external "recordings" folder
+    public static final String EXTRA_RECORD = "record";
+    public static final String EXTRA_REPLAY = "replay";
+    public static final String EXTRA_REPLAY_SPEED = "replaySpeed";   //"original" (default) or "max"
+
+    //Intent extras to log every frame's predictions under a name in the app's external "logs" folder
+    public static final String EXTRA_LOG = "log";
+    public static final String EXTRA_LOG_OVERFLOW = "logOverflow";   //"drop" (default) or "block"
+    private static final int LOG_CAPACITY = 4096;
+    private static final long LOG_FILE_BYTES = 16L * 1024 * 1024;
+
+    //the last model which loaded successfully is remembered so it can start loading before the assets are scanned
+    private static final String STARTUP_PREFERENCES = "startup";
+    private static final String PREFERENCE_FRAMEWORK = "framework";
+    private static final String PREFERENCE_MODEL = "model";
+    private static final String COMPOSITE_FRAMEWORK = "Composite";
+
     private BottomSheetBehavior<View> bottomSheetBehavior;
     RecyclerView predictionRecyclerView;
     private PredictionListViewModel predictionListViewModel;
     private PredictionAdapter predictionAdapter;
-    private Classifier imageClassifier;
+    private volatile Classifier imageClassifier;
+    //replaced classifiers are closed by the frame thread, or under the frame lock, once no frame can be using them
+    private final ConcurrentLinkedQueue<Classifier> retiredClassifiers = new ConcurrentLinkedQueue<>();
+    private final Object frameLock = new Object();
+    private final FrameConverter frameConverter = new FrameConverter(BITMAP_POOL_BYTES, ARRAY_POOL_BYTES);
     private CameraView camera;
     private AutoCompleteTextView frameworkSpinner, modelSpinner;
-    private ArrayList<String> tfliteModels, pyTorchModels;
+    private TextView statisticsTextView;
+    private HeatmapOverlayView heatmapOverlay;
+    private ArrayList<String> tfliteModels = new ArrayList<>(), pyTorchModels = new ArrayList<>(), compositeModels = new ArrayList<>();
     private String framework, model;
     private boolean analyzerEnabled = false;
+    private int frameProcessingMaxSize = Integer.MAX_VALUE;
+    private FrameRecorder frameRecorder;
+    private Thread replayThread;
+    private PredictionLogger predictionLogger;
+
+    //asset scanning and classifier loading run off the main thread, loads are queued so they complete in order
+    private final ExecutorService assetExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService classifierExecutor = Executors.newSingleThreadExecutor();
+    private volatile int classifierGeneration;
+    private long startTime;
+    private volatile String startupStatistics;
+    private volatile String tuningStatus;
+    private volatile boolean firstPredictionReported;
+    private Autotuner autotuner;
+    private boolean retuneRequested;
+    private volatile boolean classificationPaused;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        startTime = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? Process.getStartElapsedRealtime() : SystemClock.elapsedRealtime();
         setContentView(R.layout.activity_camera);
         ConstraintLayout bottomSheet = findViewById(R.id.camera_bottom_sheet);
         bottomSheetBehavior = BottomSheetBehavior.from(bottomSheet);
@@ -57,35 +108,99 @@ public class CameraActivity extends AppCompatActivity implements AdapterView.OnI
         predictionRecyclerView = findViewById(R.id.predictionRecyclerView);
         predictionRecyclerView.setAdapter(predictionAdapter);
         predictionRecyclerView.setItemAnimator(null);
+        statisticsTextView = findViewById(R.id.statisticsTextView);
+        observePredictions();
+        heatmapOverlay = findViewById(R.id.heatmapOverlay);
+        autotuner = new Autotuner(this);
+        findViewById(R.id.retuneButton).setOnClickListener(view -> {
+            retuneRequested = true;
+            createClassifier();
+        });
+        initialiseRecorder();
+        initialiseLogger();
         startCamera();
+        restoreDefaultModel();
         createModelListsFromAssets();
         initialiseBottomSheet();
     }
 
     /***
-     * Load the available model names from the assets folder and store them into the appropriate model list depending on the model extension
+     * Starts loading the model which was last used, if any, without waiting for the asset scan
      */
-    public void createModelListsFromAssets() {
-        pyTorchModels = new ArrayList<>();
-        tfliteModels = new ArrayList<>();
+    private void restoreDefaultModel() {
+        SharedPreferences preferences = getSharedPreferences(STARTUP_PREFERENCES, MODE_PRIVATE);
+        String savedFramework = preferences.getString(PREFERENCE_FRAMEWORK, null);
+        String savedModel = preferences.getString(PREFERENCE_MODEL, null);
+        if (savedFramework == null || savedModel == null) return;
+
+        framework = savedFramework;
+        model = savedModel;
+        frameworkSpinner.setText(framework, false);
+        modelSpinner.setText(model, false);
+        createClassifier();
+    }
+
+    /***
+     * Method to remember the model which was loaded so the next start can load it straight away
+     */
+    private void saveDefaultModel() {
+        getSharedPreferences(STARTUP_PREFERENCES, MODE_PRIVATE).edit()
+                .putString(PREFERENCE_FRAMEWORK, framework)
+                .putString(PREFERENCE_MODEL, model)
+                .apply();
+    }
 
+    /***
+     * Load the available model names from the assets folder on a background thread and store them into the appropriate model list depending on the model extension.
+     * Composite manifests (e.g. "Flowers.cascade.json") are listed without their trailing ".json".
+     */
+    public void createModelListsFromAssets() {
         AssetManager assetManager = getAssets();
-        try {
-            for (String modelName : assetManager.list("")) {
-                if (modelName.endsWith(".pt")) {
-                    pyTorchModels.add(modelName);
-                } else if (modelName.endsWith(".tflite")) {
-                    tfliteModels.add(modelName);
+        assetExecutor.execute(() -> {
+            ArrayList<String> pyTorch = new ArrayList<>(), tflite = new ArrayList<>(), composite = new ArrayList<>();
+            try {
+                for (String modelName : assetManager.list("")) {
+                    if (ClassifierUtils.isPyTorchModel(modelName)) {
+                        pyTorch.add(modelName);
+                    } else if (modelName.endsWith(".tflite")) {
+                        tflite.add(modelName);
+                    } else if (ClassifierUtils.isCompositeManifest(modelName)) {
+                        composite.add(ClassifierUtils.removeFileExtension(modelName, false));
+                    }
                 }
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-            if (initialiseModelAndFramework()) {
-                frameworkSpinner.setText(framework, false);
-                modelSpinner.setText(model, false);
-                createClassifier();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+            runOnUiThread(() -> onModelListsCreated(pyTorch, tflite, composite));
+        });
+    }
+
+    /***
+     * Callback invoked on the main thread once the assets have been scanned. The restored model is kept if it
+     * still exists, otherwise the default model is loaded.
+     * @param pyTorch the PyTorch models
+     * @param tflite the TensorFlow Lite models
+     * @param composite the composite manifests
+     */
+    private void onModelListsCreated(ArrayList<String> pyTorch, ArrayList<String> tflite, ArrayList<String> composite) {
+        pyTorchModels = pyTorch;
+        tfliteModels = tflite;
+        compositeModels = composite;
+
+        if (framework != null && modelsForFramework(framework).contains(model)) {
+            modelSpinner.setAdapter(new ArrayAdapter<>(this, R.layout.support_simple_spinner_dropdown_item, modelsForFramework(framework)));
+            modelSpinner.setText(model, false);
+            return;
         }
+
+        model = null;
+        framework = null;
+        if (initialiseModelAndFramework()) {
+            frameworkSpinner.setText(framework, false);
+            modelSpinner.setAdapter(new ArrayAdapter<>(this, R.layout.support_simple_spinner_dropdown_item, modelsForFramework(framework)));
+            modelSpinner.setText(model, false);
+        }
+        createClassifier();
     }
 
     /***
@@ -107,14 +222,72 @@ public class CameraActivity extends AppCompatActivity implements AdapterView.OnI
         return false;
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        assetExecutor.shutdownNow();
+        classifierExecutor.shutdownNow();
+        stopReplay();
+        if (frameRecorder != null) {
+            try {
+                frameRecorder.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        Classifier classifier = imageClassifier;
+        imageClassifier = null;
+        if (classifier != null) retiredClassifiers.add(classifier);
+        closeRetiredClassifiers();
+
+        if (predictionLogger != null) predictionLogger.close();
+    }
+
+    /***
+     * Opens the prediction logger if the activity was started with a log name
+     */
+    private void initialiseLogger() {
+        String log = getIntent().getStringExtra(EXTRA_LOG);
+        if (log == null) return;
+
+        PredictionLogger.OverflowPolicy overflowPolicy = "block".equals(getIntent().getStringExtra(EXTRA_LOG_OVERFLOW))
+                ? PredictionLogger.OverflowPolicy.BLOCK : PredictionLogger.OverflowPolicy.DROP;
+        try {
+            predictionLogger = new PredictionLogger(getExternalFilesDir("logs"), log, LOG_CAPACITY, LOG_FILE_BYTES, overflowPolicy);
+        } catch (IOException e) {
+            Log.e("TAG", "Error: Cannot create prediction log " + log + ": " + e.getMessage());
+        }
+    }
+
+    /***
+     * Opens the frame recorder if the activity was started with a recording file
+     */
+    private void initialiseRecorder() {
+        String recording = getIntent().getStringExtra(EXTRA_RECORD);
+        if (recording == null) return;
+
+        try {
+            frameRecorder = new FrameRecorder(new File(getExternalFilesDir("recordings"), recording));
+        } catch (IOException e) {
+            Log.e("TAG", "Error: Cannot create recording " + recording + ": " + e.getMessage());
+        }
+    }
+
     /***
      * Starts the camera
      */
     private void startCamera() {
+        camera.setFrameProcessingFormat(ImageFormat.YUV_420_888);
+        camera.setFrameProcessingPoolSize(FRAME_PROCESSING_POOL_SIZE);
         camera.addCameraListener(new CameraListener() {
             @Override
             public void onCameraOpened(@NonNull CameraOptions options) {
                 super.onCameraOpened(options);
+                if (startupStatistics == null) {
+                    startupStatistics = String.format(Locale.ROOT, "Startup: preview %d ms", SystemClock.elapsedRealtime() - startTime);
+                    Log.i("Startup", startupStatistics);
+                }
             }
 
             @Override
@@ -125,65 +298,162 @@ public class CameraActivity extends AppCompatActivity implements AdapterView.OnI
     }
 
     /***
-     * Adds a frame processor to the camera for classification
+     * Configures the camera to deliver the smallest frames that still cover the classifier's input after
+     * center cropping, restarting the camera if the frame size has to change.
+     * @param classifier the active classifier
      */
-    private void setFrameProcessor() {
+    private void configureFrameProcessing(Classifier classifier) {
+        int inputSize = classifier.getInputSize();
+
+        // a frame fitting in a (maxSize x maxSize) box keeps a short side of at least inputSize for aspect ratios up to 16:9
+        int maxSize = inputSize > 0 ? (int) Math.ceil(inputSize * MAX_FRAME_ASPECT_RATIO) : Integer.MAX_VALUE;
+        if (maxSize == frameProcessingMaxSize) return;
+
+        frameProcessingMaxSize = maxSize;
+        camera.setFrameProcessingMaxWidth(maxSize);
+        camera.setFrameProcessingMaxHeight(maxSize);
+
+        // the frame processing size is only negotiated when the camera is opened
+        if (camera.isOpened()) {
+            camera.close();
+            camera.open();
+        }
+    }
+
+    /***
+     * Shows the predictions and statistics posted by the frame thread, and any status posted while loading
+     */
+    private void observePredictions() {
         predictionListViewModel.predictionList.observe(this, predictions -> predictionAdapter.submitList(predictions));
+        predictionListViewModel.statistics.observe(this, statistics -> {
+            statisticsTextView.setText(statistics);
+            statisticsTextView.setVisibility(statistics != null ? View.VISIBLE : View.GONE);
+        });
+    }
 
-        camera.addFrameProcessor(frame -> {
-            Bitmap bitmap = null;
+    /***
+     * Adds a frame processor to the camera for classification
+     */
+    private void setFrameProcessor() {
+        String replay = getIntent().getStringExtra(EXTRA_REPLAY);
+        if (replay != null) {
+            startReplay(new File(getExternalFilesDir("recordings"), replay), "max".equals(getIntent().getStringExtra(EXTRA_REPLAY_SPEED)));
+        } else {
+            camera.addFrameProcessor(frame -> {
+                if (frameRecorder != null) frameRecorder.record(frame);
+                processFrame(frameConverter.convert(frame), frame.getRotationToView());
+            });
+        }
+        analyzerEnabled = true;
+    }
 
-            if (frame.getDataClass() == byte[].class) {
-                byte[] data = frame.getData();
-                bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
-            } else if (frame.getDataClass() == Image.class) {
-                Image data = frame.getData();
-                bitmap = toBitmap(data);
+    /***
+     * Classifies a converted frame and updates the predictions, statistics and heatmap. Live and replayed frames
+     * both go through this method.
+     * @param bitmap the converted frame, which is returned to the frame converter's pool afterwards
+     * @param rotationToView the rotation from the frame to the view orientation
+     */
+    private void processFrame(Bitmap bitmap, int rotationToView) {
+        synchronized (frameLock) {
+            closeRetiredClassifiers();
+            Classifier classifier = imageClassifier;
+            if (bitmap != null && classifier != null && !classificationPaused) {
+                predictionListViewModel.updateData(classifier.topKPredictions(bitmap));
+                if (!firstPredictionReported) reportFirstPrediction();
+                Classifier heatmapSource = classifier instanceof LoggingClassifier ? ((LoggingClassifier) classifier).getClassifier() : classifier;
+                if (heatmapSource instanceof MultiCropClassifier) {
+                    MultiCropClassifier multiCropClassifier = (MultiCropClassifier) heatmapSource;
+                    heatmapOverlay.setHeatmap(multiCropClassifier.getRegions(), multiCropClassifier.getHeat(), rotationToView);
+                }
+                String statistics = classifier.getStatistics();
+                statistics = statistics != null ? statistics + "\n" + frameConverter.getStatistics() : frameConverter.getStatistics();
+                if (startupStatistics != null) statistics += "\n" + startupStatistics;
+                if (tuningStatus != null) statistics += "\n" + tuningStatus;
+                predictionListViewModel.updateStatistics(statistics);
             }
+            frameConverter.release(bitmap);
+        }
+    }
+
+    /***
+     * Closes the classifiers which were replaced since the last frame. Called on the frame thread before each
+     * frame, or on another thread once frames have stopped, holding the frame lock so no frame is being classified.
+     */
+    private void closeRetiredClassifiers() {
+        synchronized (frameLock) {
+            Classifier retired;
+            while ((retired = retiredClassifiers.poll()) != null) retired.close();
+        }
+    }
 
-            if (bitmap != null) {
-                predictionListViewModel.updateData(imageClassifier.topKPredictions(bitmap));
+    /***
+     * Records the time from the process start to the first prediction
+     */
+    private void reportFirstPrediction() {
+        firstPredictionReported = true;
+        long elapsed = SystemClock.elapsedRealtime() - startTime;
+        String preview = startupStatistics != null ? startupStatistics : "Startup:";
+        startupStatistics = String.format(Locale.ROOT, "%s  first prediction %d ms", preview, elapsed);
+        Log.i("Startup", startupStatistics);
+    }
+
+    /***
+     * Starts feeding the frames of a recording through the frame pipeline on a background thread
+     * @param recording the recording file
+     * @param maxSpeed true to replay as fast as possible, false to keep the original frame timing
+     */
+    private void startReplay(File recording, boolean maxSpeed) {
+        replayThread = new Thread(() -> {
+            try (FrameReplayer replayer = new FrameReplayer(recording)) {
+                int frames = 0;
+                long firstFrameTime = -1;
+                long replayStart = SystemClock.elapsedRealtime();
+
+                RecordedFrame frame;
+                while (!Thread.currentThread().isInterrupted() && (frame = replayer.next()) != null) {
+                    if (firstFrameTime < 0) firstFrameTime = frame.getTime();
+                    if (!maxSpeed) {
+                        long delay = (frame.getTime() - firstFrameTime) - (SystemClock.elapsedRealtime() - replayStart);
+                        if (delay > 0) Thread.sleep(delay);
+                    }
+                    processFrame(frameConverter.convert(frame), frame.getRotationToView());
+                    frames++;
+                }
+
+                long elapsed = SystemClock.elapsedRealtime() - replayStart;
+                Log.i("Replay", String.format(Locale.ROOT, "Replayed %d frames of %s in %d ms (%.1f fps)",
+                        frames, recording.getName(), elapsed, elapsed > 0 ? frames * 1000.0f / elapsed : 0.0f));
+            } catch (IOException | IllegalArgumentException e) {
+                // a corrupt record can point the mapped buffers out of bounds
+                Log.e("TAG", "Error: Cannot replay " + recording + ": " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-        });
-        analyzerEnabled = true;
+        }, "replay");
+        replayThread.start();
+    }
+
+    /***
+     * Stops an ongoing replay
+     */
+    private void stopReplay() {
+        if (replayThread != null) {
+            replayThread.interrupt();
+            replayThread = null;
+        }
     }
 
     /***
      * Clear the frame processor and remove prediction list observers
      */
     private void removeImageAnalyzer() {
+        stopReplay();
         camera.clearFrameProcessors();
         predictionAdapter.submitList(null);
-        predictionListViewModel.predictionList.removeObservers(this);
-    }
+        statisticsTextView.setVisibility(View.GONE);
 
-    /***
-     * converts an image object into a bitmap
-     * @param image the image to convert
-     * @return a bitmap of the image
-     */
-    private Bitmap toBitmap(Image image) {
-        Image.Plane[] planes = image.getPlanes();
-        ByteBuffer yBuffer = planes[0].getBuffer();
-        ByteBuffer uBuffer = planes[1].getBuffer();
-        ByteBuffer vBuffer = planes[2].getBuffer();
-
-        int ySize = yBuffer.remaining();
-        int uSize = uBuffer.remaining();
-        int vSize = vBuffer.remaining();
-
-        byte[] nv21 = new byte[ySize + uSize + vSize];
-        //U and V are swapped
-        yBuffer.get(nv21, 0, ySize);
-        vBuffer.get(nv21, ySize, vSize);
-        uBuffer.get(nv21, ySize + vSize, uSize);
-
-        YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, image.getWidth(), image.getHeight(), null);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        yuvImage.compressToJpeg(new Rect(0, 0, yuvImage.getWidth(), yuvImage.getHeight()), 100, out);
-
-        byte[] imageBytes = out.toByteArray();
-        return BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
+        // no further frames will close the replaced classifier
+        classifierExecutor.execute(this::closeRetiredClassifiers);
     }
 
     /***
@@ -229,21 +499,144 @@ public class CameraActivity extends AppCompatActivity implements AdapterView.OnI
     }
 
     /***
-     * Method to create an image classifier instance
+     * Method to create an image classifier instance for the selected model. The model is loaded on a background
+     * thread and replaces the current classifier once loaded, unless another model was selected in the meantime.
      */
     public void createClassifier() {
-        ClassifierDetails details = ClassifierUtils.deserializeModelJSON(this, model);
-        if (details != null) {
-            imageClassifier = Classifier.createInstance(this, details);
-            if (imageClassifier != null && !analyzerEnabled) setFrameProcessor();
+        int generation = ++classifierGeneration;
+        String selectedModel = model;
+        boolean composite = COMPOSITE_FRAMEWORK.equals(framework);
+        boolean retune = retuneRequested;
+        retuneRequested = false;
+        heatmapOverlay.clear();
+
+        if (selectedModel == null) {
+            applyClassifier(generation, null);
+            return;
+        }
+
+        classifierExecutor.execute(() -> {
+            long start = SystemClock.elapsedRealtime();
+            Classifier classifier = loadClassifier(selectedModel, composite, retune);
+            Log.i("Startup", "Loaded " + selectedModel + " in " + (SystemClock.elapsedRealtime() - start) + " ms");
+            runOnUiThread(() -> applyClassifier(generation, classifier));
+
+            // a model without a plan runs with the defaults first, so tuning doesn't delay the first prediction
+            if (classifier != null && !composite && !retune) {
+                classifierExecutor.execute(() -> tuneClassifier(generation, selectedModel));
+            }
+        });
+    }
+
+    /***
+     * Method to tune a model which has no plan on this device yet and replace its classifier with one run
+     * according to the new plan, called on the classifier loading thread while the default classifier runs
+     * @param generation the load request the model belongs to
+     * @param modelName the model name
+     */
+    private void tuneClassifier(int generation, String modelName) {
+        if (generation != classifierGeneration) return;
+
+        ClassifierDetails details = ClassifierUtils.deserializeModelJSON(this, modelName);
+        if (details == null || autotuner.getPlan(details) != null) return;
+
+        Classifier classifier = loadClassifier(modelName, false, true);
+        runOnUiThread(() -> applyClassifier(generation, classifier));
+    }
+
+    /***
+     * Method to load a classifier, called on the classifier loading thread. Single models are run with the
+     * execution plan tuned for this device, or with the defaults until they have been tuned.
+     * @param modelName the model name
+     * @param composite true if the model is a composite manifest
+     * @param tune true to tune the model (again) before loading it
+     * @return the classifier or null if it could not be loaded
+     */
+    private Classifier loadClassifier(String modelName, boolean composite, boolean tune) {
+        Classifier classifier = null;
+        if (composite) {
+            classifier = Classifier.createComposite(this, modelName);
+        } else {
+            ClassifierDetails details = ClassifierUtils.deserializeModelJSON(this, modelName);
+            if (details != null) {
+                ExecutionPlan plan = tune ? tune(details, modelName) : autotuner.getPlan(details);
+
+                // the plan may run an alternative file of the same network
+                ClassifierDetails planDetails = plan != null && !plan.getModel().equals(modelName)
+                        ? ClassifierUtils.deserializeModelJSON(this, plan.getModel()) : details;
+                if (planDetails == null) {
+                    planDetails = details;
+                    plan = null;
+                }
+                classifier = Classifier.createInstance(this, planDetails, plan);
+            }
+        }
+        return withLogging(classifier, modelName);
+    }
+
+    /***
+     * Method to tune a model, showing the progress in the statistics until it is done
+     * @param details the details of the model
+     * @param modelName the model name
+     * @return the fastest plan or null if no plan could be run
+     */
+    private ExecutionPlan tune(ClassifierDetails details, String modelName) {
+        tuningStatus = "Tuning " + modelName + " for this device...";
+        predictionListViewModel.updateStatistics(tuningStatus);
+
+        // live frames would compete with the sweep for the cores and run under the PyTorch thread counts it tries,
+        // so frames are skipped until it is done, once the frame being classified (if any) has finished
+        classificationPaused = true;
+        synchronized (frameLock) {
+            closeRetiredClassifiers();
+        }
+        try {
+            return autotuner.tune(details);
+        } finally {
+            classificationPaused = false;
+            tuningStatus = null;
+        }
+    }
+
+    /***
+     * Method to make a loaded classifier the active one, called on the main thread. The previous classifier may
+     * still be classifying a frame, so it is closed by the frame thread before the next frame.
+     * @param generation the load request the classifier belongs to
+     * @param classifier the loaded classifier or null if it could not be loaded
+     */
+    private void applyClassifier(int generation, Classifier classifier) {
+        if (generation != classifierGeneration || isDestroyed()) {
+            // superseded by a later selection, no frame has seen it
+            if (classifier != null) classifier.close();
+            return;
+        }
+
+        Classifier previous = imageClassifier;
+        imageClassifier = classifier;
+        if (previous != null) retiredClassifiers.add(previous);
+
+        if (classifier != null) {
+            saveDefaultModel();
+            configureFrameProcessing(classifier);
+            if (!analyzerEnabled) setFrameProcessor();
         }
         else {
-            imageClassifier = null;
             analyzerEnabled = false;
             removeImageAnalyzer();
         }
     }
 
+    /***
+     * Method to wrap a classifier so its predictions are logged, if logging is enabled
+     * @param classifier the classifier or null
+     * @param modelName the model name the predictions are logged under
+     * @return the logging classifier, or the classifier itself if logging is disabled
+     */
+    private Classifier withLogging(Classifier classifier, String modelName) {
+        if (classifier == null || predictionLogger == null) return classifier;
+        return new LoggingClassifier(classifier, predictionLogger, modelName);
+    }
+
     /***
      * Callback method to be invoked when a spinner item has been selected
      * @param parent the spinner which was selected
@@ -257,7 +650,7 @@ public class CameraActivity extends AppCompatActivity implements AdapterView.OnI
             String selectedFramework = parent.getItemAtPosition(position).toString();
 
             //if the framework has changed, update the current framework & update the spinners list to show models belonging to that framework
-            if(!framework.equals(selectedFramework)) {
+            if(!selectedFramework.equals(framework)) {
                 framework = selectedFramework;
                 modelSpinner.setText("");
                 updateModelSpinnerEntries(framework);
@@ -267,7 +660,7 @@ public class CameraActivity extends AppCompatActivity implements AdapterView.OnI
         //if the selected model has changed, update the current model and use it to create a new classier.
         if (parent.getAdapter().equals(modelSpinner.getAdapter())) {
             String selectedModel = parent.getItemAtPosition(position).toString();
-            if (!model.equals(selectedModel)) {
+            if (!selectedModel.equals(model)) {
                 model = parent.getItemAtPosition(position).toString();
                 createClassifier();
             }
@@ -276,10 +669,10 @@ public class CameraActivity extends AppCompatActivity implements AdapterView.OnI
 
     /***
      * Method to update the model spinner entries to display the models for the selected framework
-     * @param framework the selected framework (Pytorch Mobile or TensorFlow Lite)
+     * @param framework the selected framework (Pytorch Mobile, TensorFlow Lite or Composite)
      */
     public void updateModelSpinnerEntries(String framework) {
-        ArrayList<String> displayModels = framework.equals("PyTorch Mobile") ? pyTorchModels : tfliteModels;
+        ArrayList<String> displayModels = modelsForFramework(framework);
         ArrayAdapter<String> arrayAdapter = new ArrayAdapter<>(this, R.layout.support_simple_spinner_dropdown_item, displayModels);
         modelSpinner.setAdapter(arrayAdapter);
         if (!displayModels.isEmpty()) {
@@ -289,4 +682,15 @@ public class CameraActivity extends AppCompatActivity implements AdapterView.OnI
         else model = null;
         createClassifier();
     }
-}
\ No newline at end of file
+
+    /***
+     * Method to get the models belonging to a framework
+     * @param framework the framework (Pytorch Mobile, TensorFlow Lite or Composite)
+     * @return the list of models
+     */
+    private ArrayList<String> modelsForFramework(String framework) {
+        if (framework.equals("PyTorch Mobile")) return pyTorchModels;
+        else if (framework.equals("TensorFlow Lite")) return tfliteModels;
+        else return compositeModels;
+    }
+}
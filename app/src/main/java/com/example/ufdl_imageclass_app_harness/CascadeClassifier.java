@@ -0,0 +1,175 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+
+/***
+ * A classifier which runs a cheap model on every frame and only escalates the frame to a slower, more
+ * accurate model when the cheap model is unsure of its prediction. Both models are compared on their class
+ * probabilities, so the thresholds mean the same for either engine. Predictions keep the labels of the member
+ * which made them; the members' labels are only normalised to compare them (e.g. "black-eyed_susan" and
+ * "Black eyed susan" are the same class), for the agreement statistic.
+ */
+
+public class CascadeClassifier extends Classifier {
+    private final Classifier fastClassifier;
+    private final Classifier accurateClassifier;
+    private final String[] fastClasses;
+    private final String[] accurateClasses;
+    private final float confidenceThreshold;
+    private final float marginThreshold;
+
+    //runtime statistics
+    private long frames;
+    private long escalations;
+    private long agreements;
+    private long totalNanos;
+
+    /***
+     * Constructor to create a cascade classifier
+     * @param context the context
+     * @param details the cascade details naming the fast and accurate models and the escalation thresholds
+     * @throws IOException if either of the models could not be created
+     */
+    public CascadeClassifier(Context context, CascadeDetails details) throws IOException {
+        super();
+        this.fastClassifier = createMember(context, details.getFastModel());
+        this.accurateClassifier = createMember(context, details.getAccurateModel());
+        this.fastClasses = fastClassifier.getClasses();
+        this.accurateClasses = accurateClassifier.getClasses();
+        this.confidenceThreshold = details.getConfidenceThreshold();
+        this.marginThreshold = details.getMarginThreshold();
+    }
+
+    /***
+     * Method to decide whether the fast model's predictions are too uncertain to be trusted
+     * @param predictions the fast model's predictions sorted by descending probability
+     * @return true if the frame should be passed to the accurate model
+     */
+    private boolean shouldEscalate(List<Prediction> predictions) {
+        if (predictions.isEmpty()) return true;
+
+        float top1 = predictions.get(0).getConfidence();
+        float top2 = predictions.size() > 1 ? predictions.get(1).getConfidence() : 0.0f;
+
+        return top1 < confidenceThreshold || (top1 - top2) < marginThreshold;
+    }
+
+    /***
+     * Method to check whether both members ranked the same class first, matching their labels once normalised
+     * @param fast the fast model's predictions
+     * @param accurate the accurate model's predictions
+     * @return true if the top labels are the same class
+     */
+    private static boolean sameTopLabel(List<Prediction> fast, List<Prediction> accurate) {
+        if (fast.isEmpty() || accurate.isEmpty()) return false;
+        return ClassifierUtils.normaliseLabel(fast.get(0).getLabel())
+                .equals(ClassifierUtils.normaliseLabel(accurate.get(0).getLabel()));
+    }
+
+    /***
+     * A method to feed a bitmap to the cascade and get the top 3 predictions. The accurate model's
+     * predictions are returned when the frame is escalated, otherwise the fast model's predictions are returned.
+     * @param bitmap the bitmap to feed the image classifier
+     * @return A list containing the top 3 predictions
+     */
+    @Override
+    public List<Prediction> topKPredictions(Bitmap bitmap) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        List<Prediction> predictions = predictionsOf(fastClassifier.classProbabilities(bitmap), fastClasses,
+                fastClassifier.getLabelSubset());
+
+        if (shouldEscalate(predictions)) {
+            List<Prediction> accurate = predictionsOf(accurateClassifier.classProbabilities(bitmap), accurateClasses,
+                    accurateClassifier.getLabelSubset());
+            if (sameTopLabel(predictions, accurate)) agreements++;
+            predictions = accurate;
+            escalations++;
+        }
+
+        frames++;
+        totalNanos += SystemClock.elapsedRealtimeNanos() - start;
+        return predictions;
+    }
+
+    /***
+     * Method to feed a bitmap to the cascade and return a single prediction
+     * @param bitmap the bitmap to feed to the image classifier
+     * @return the top prediction
+     */
+    @Override
+    public Prediction predict(Bitmap bitmap) {
+        return topKPredictions(bitmap).get(0);
+    }
+
+    /***
+     * Method to get the fraction of frames which were escalated to the accurate model
+     * @return the escalation rate between 0 and 1
+     */
+    public float getEscalationRate() {
+        return frames == 0 ? 0.0f : (float) escalations / frames;
+    }
+
+    /***
+     * Method to get the fraction of escalated frames on which the accurate model agreed with the fast model's
+     * top prediction, i.e. escalations which the thresholds could have avoided
+     * @return the agreement rate between 0 and 1
+     */
+    public float getAgreementRate() {
+        return escalations == 0 ? 0.0f : (float) agreements / escalations;
+    }
+
+    /***
+     * Method to get the average time spent classifying a frame, including escalations
+     * @return the average cost per frame in milliseconds
+     */
+    public float getAverageCostPerFrame() {
+        return frames == 0 ? 0.0f : totalNanos / 1e6f / frames;
+    }
+
+    /***
+     * Method to get the escalation rate, agreement rate and average cost per frame for display
+     * @return the formatted statistics
+     */
+    @Override
+    public String getStatistics() {
+        return String.format(Locale.ROOT, "Escalated: %.1f%%  Agreed: %.1f%%  Avg: %.1f ms/frame",
+                getEscalationRate() * 100.0f, getAgreementRate() * 100.0f, getAverageCostPerFrame());
+    }
+
+    /***
+     * Method to get the labels of both members, which the cascade's predictions keep
+     * @return the fast model's labels followed by the accurate model's labels it doesn't share
+     */
+    @Override
+    public String[] getPredictedLabels() {
+        LinkedHashSet<String> labels = new LinkedHashSet<>(Arrays.asList(fastClasses));
+        labels.addAll(Arrays.asList(accurateClasses));
+        return labels.toArray(new String[0]);
+    }
+
+    /***
+     * Method to get the input size required by the larger of the two cascade members
+     * @return the largest input side in pixels
+     */
+    @Override
+    public int getInputSize() {
+        return Math.max(fastClassifier.getInputSize(), accurateClassifier.getInputSize());
+    }
+
+    /***
+     * Method to release the resources held by both cascade members
+     */
+    @Override
+    public void close() {
+        fastClassifier.close();
+        accurateClassifier.close();
+    }
+}
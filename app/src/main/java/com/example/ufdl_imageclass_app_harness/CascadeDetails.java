@@ -0,0 +1,63 @@
+package com.example.ufdl_imageclass_app_harness;
+
+/***
+ A class to encapsulate the information required to build a CascadeClassifier. Cascade manifests are
+ stored in the assets folder as "[name].cascade.json".
+ */
+
+public class CascadeDetails {
+    private String name;
+    private String fastModel;
+    private String accurateModel;
+
+    //Escalation thresholds applied to the fast model's predictions
+    private float confidenceThreshold = 0.6f;   //escalate if the top-1 probability is below this value
+    private float marginThreshold = 0.1f;       //escalate if the top-1/top-2 probability margin is below this value
+
+    /***
+     * Default constructor for CascadeDetails
+     */
+    public CascadeDetails() {
+        super();
+    }
+
+    /***
+     * Method to get the cascade name
+     * @return the cascade name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /***
+     * Method to get the name of the cheap model which runs on every frame
+     * @return the fast model name
+     */
+    public String getFastModel() {
+        return fastModel;
+    }
+
+    /***
+     * Method to get the name of the expensive model which only runs on escalated frames
+     * @return the accurate model name
+     */
+    public String getAccurateModel() {
+        return accurateModel;
+    }
+
+    /***
+     * Method to get the top-1 confidence below which a frame is escalated to the accurate model
+     * @return the confidence threshold
+     */
+    public float getConfidenceThreshold() {
+        return confidenceThreshold;
+    }
+
+    /***
+     * Method to get the top-1/top-2 confidence margin below which a frame is escalated to the accurate model
+     * @return the margin threshold
+     */
+    public float getMarginThreshold() {
+        return marginThreshold;
+    }
+}
@@ -2,9 +2,17 @@ package com.example.ufdl_imageclass_app_harness;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.util.Log;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public abstract class Classifier {
     protected final int TOP_K = 3;
@@ -23,11 +31,22 @@ public abstract class Classifier {
      * @return a PyTorch classifier or Tensorflow lite classifier depending on the model extension.
      */
     public static Classifier createInstance(Context context, ClassifierDetails details) {
+        return createInstance(context, details, null);
+    }
+
+    /***
+     * A factory method to return an appropriate image classifier run according to an execution plan
+     * @param context the context
+     * @param details the classifier details of the plan's model
+     * @param plan the execution plan or null to use the defaults
+     * @return a PyTorch classifier or Tensorflow lite classifier depending on the model extension.
+     */
+    public static Classifier createInstance(Context context, ClassifierDetails details, ExecutionPlan plan) {
         try {
-            if (details.getName().endsWith(".pt")) {
-                return new PyTorchClassifier(context, details);
+            if (ClassifierUtils.isPyTorchModel(details.getName())) {
+                return new PyTorchClassifier(context, details, plan);
             } else {
-                return new TFLiteClassifier(context, details);
+                return new TFLiteClassifier(context, details, plan);
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -36,9 +55,57 @@ public abstract class Classifier {
         return null;
     }
 
+    /***
+     * A factory method to create a member of a composite classifier from its model name
+     * @param context the context
+     * @param model the model name
+     * @return the classifier
+     * @throws IOException if the model details or the model could not be loaded
+     */
+    protected static Classifier createMember(Context context, String model) throws IOException {
+        ClassifierDetails details = ClassifierUtils.deserializeModelJSON(context, model);
+        Classifier classifier = details != null ? createInstance(context, details) : null;
+
+        if (classifier == null) {
+            throw new IOException("Unable to create classifier for " + model);
+        }
+        return classifier;
+    }
 
     /***
-     * An abstract method to return a list of predictions
+     * A factory method to return a composite classifier (a classifier combining several models) described
+     * by a manifest in the assets folder, depending on the manifest extension.
+     * @param context the context
+     * @param manifest the manifest name without the trailing ".json" (e.g. "Flowers.cascade")
+     * @return the composite classifier or null if the manifest or one of its models could not be loaded
+     */
+    public static Classifier createComposite(Context context, String manifest) {
+        try {
+            if (manifest.endsWith(".cascade")) {
+                CascadeDetails details = ClassifierUtils.deserializeManifestJSON(context, manifest, CascadeDetails.class);
+                if (details != null) return new CascadeClassifier(context, details);
+            } else if (manifest.endsWith(".ensemble")) {
+                EnsembleDetails details = ClassifierUtils.deserializeManifestJSON(context, manifest, EnsembleDetails.class);
+                if (details != null) return new EnsembleClassifier(context, details);
+            } else if (manifest.endsWith(".multicrop")) {
+                MultiCropDetails details = ClassifierUtils.deserializeManifestJSON(context, manifest, MultiCropDetails.class);
+                if (details != null) return new MultiCropClassifier(context, details);
+            } else if (manifest.endsWith(".remote")) {
+                RemoteDetails details = ClassifierUtils.deserializeManifestJSON(context, manifest, RemoteDetails.class);
+                if (details != null) return new RemoteClassifier(context, details);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+
+    /***
+     * An abstract method to return a list of predictions. The bitmap is only valid until the method returns, as
+     * the caller recycles frames into a pool; a classifier which keeps working on it afterwards must copy it,
+     * e.g. into a SharedFrame.
      * @param bitmap the bitmap to feed the image classifier
      * @return a list of the top K (k = 3) predictions
      */
@@ -50,4 +117,260 @@ public abstract class Classifier {
      * @return a Prediction
      */
     public abstract Prediction predict(Bitmap bitmap);
+
+    /***
+     * Method to get the probability of every class of the model for a bitmap. Unlike the confidences of
+     * topKPredictions, which are in the engine's own units, these are on the same scale for every engine so
+     * composite classifiers can compare and fuse them.
+     * @param bitmap the bitmap to feed to the image classifier
+     * @return the probabilities aligned with getClasses(), 0 for classes outside the label subset
+     * @throws UnsupportedOperationException if the classifier has no single set of classes
+     */
+    public float[] classProbabilities(Bitmap bitmap) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not provide class probabilities");
+    }
+
+    /***
+     * Method to classify several crops of a bitmap in one batched call
+     * @param bitmap the bitmap to feed to the image classifier
+     * @param crops the regions of the bitmap to classify
+     * @return the class probabilities (as classProbabilities returns them) of every class for each crop
+     * @throws UnsupportedOperationException if the classifier can't run batches
+     */
+    public float[][] batchScores(Bitmap bitmap, Rect[] crops) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support batched classification");
+    }
+
+    /***
+     * Method to get the set of classes the model was trained on
+     * @return String array of classes (image labels) or null if the classifier has no single set of classes
+     */
+    public String[] getClasses() {
+        return null;
+    }
+
+    /***
+     * Method to get every label the classifier's predictions can carry, so they can be registered before the first
+     * frame, e.g. with a PredictionLogger. Composite classifiers without a single set of classes return the labels
+     * of all their members.
+     * @return String array of labels or null if the labels aren't known until they are predicted
+     */
+    public String[] getPredictedLabels() {
+        return getClasses();
+    }
+
+    /***
+     * Method to get the indices of the classes a classifier's predictions are restricted to
+     * @return the ascending class indices, or null if every class is predicted
+     */
+    public int[] getLabelSubset() {
+        return null;
+    }
+
+    /***
+     * Method to resolve an allow-list of labels into class indices, once when a classifier is created, so
+     * post-processing only has to visit those indices
+     * @param classes the classes of the model
+     * @param labels the labels to keep, or null to keep every class
+     * @return the ascending indices of the labels, or null if every class is kept
+     */
+    protected static int[] resolveLabelSubset(String[] classes, String[] labels) {
+        if (labels == null || labels.length == 0) return null;
+
+        Map<String, Integer> indices = new HashMap<>();
+        for (int i = 0; i < classes.length; i++) indices.put(classes[i], i);
+
+        int[] subset = new int[labels.length];
+        int count = 0;
+        for (String label : labels) {
+            Integer index = indices.get(label);
+            if (index == null) {
+                Log.e("TAG", "Error: Label " + label + " of the label subset is not a class of the model");
+                continue;
+            }
+            subset[count++] = index;
+        }
+
+        subset = Arrays.copyOf(subset, count);
+        Arrays.sort(subset);
+        return subset;
+    }
+
+    /***
+     * Method to get the indices of the top 3 prediction confidence scores
+     * @param scores prediction scores
+     * @return indices of the top 3 predictions
+     */
+    protected int[] topK(float[] scores) {
+        return topK(scores, null);
+    }
+
+    /***
+     * Method to get the indices of the top 3 prediction confidence scores among a subset of the classes
+     * @param scores prediction scores, only read at the subset's indices
+     * @param subset the class indices to rank, or null to rank every class
+     * @return indices of the top 3 predictions, -1 where the subset has fewer classes
+     */
+    protected int[] topK(float[] scores, int[] subset) {
+        float[] values = new float[TOP_K];
+        Arrays.fill(values, -Float.MAX_VALUE);
+        int[] indices = new int[TOP_K];
+        Arrays.fill(indices, -1);
+
+        int count = subset == null ? scores.length : subset.length;
+        for (int n = 0; n < count; n++) {
+            int i = subset == null ? n : subset[n];
+            for (int j = 0; j < TOP_K; j++) {
+                if (scores[i] > values[j]) {
+                    for (int k = TOP_K - 1; k >= j + 1; k--) {
+                        values[k] = values[k - 1];
+                        indices[k] = indices[k - 1];
+                    }
+                    values[j] = scores[i];
+                    indices[j] = i;
+                    break;
+                }
+            }
+        }
+        return indices;
+    }
+
+    /***
+     * Method to sum the scores of a subset of the classes
+     * @param scores prediction scores, only read at the subset's indices
+     * @param subset the class indices to sum, or null to sum every class
+     * @return the sum of the scores
+     */
+    protected static float subsetSum(float[] scores, int[] subset) {
+        float sum = 0.0f;
+        int count = subset == null ? scores.length : subset.length;
+        for (int n = 0; n < count; n++) sum += scores[subset == null ? n : subset[n]];
+        return sum;
+    }
+
+    /***
+     * Method to turn logits into probabilities with a softmax over a subset of the classes
+     * @param logits the model outputs, only read at the subset's indices
+     * @param subset the class indices to include, or null to include every class
+     * @return the probabilities; the logits array itself when every class is included, otherwise a new array
+     * which is 0 outside the subset
+     */
+    protected static float[] softmax(float[] logits, int[] subset) {
+        float[] probabilities = subset == null ? logits : new float[logits.length];
+        int count = subset == null ? logits.length : subset.length;
+
+        float max = -Float.MAX_VALUE;
+        for (int n = 0; n < count; n++) max = Math.max(max, logits[subset == null ? n : subset[n]]);
+
+        float denominator = softmaxDenominator(logits, subset, max);
+        for (int n = 0; n < count; n++) {
+            int i = subset == null ? n : subset[n];
+            probabilities[i] = (float) Math.exp(logits[i] - max) / denominator;
+        }
+        return probabilities;
+    }
+
+    /***
+     * Method to get the top predictions of a probability vector
+     * @param probabilities the probability of every class
+     * @param classes the class labels
+     * @param subset the class indices to rank, or null to rank every class
+     * @return A list containing the top 3 predictions, fewer if there are fewer classes
+     */
+    protected List<Prediction> predictionsOf(float[] probabilities, String[] classes, int[] subset) {
+        int[] indices = topK(probabilities, subset);
+        List<Prediction> predictions = new ArrayList<>(TOP_K);
+        for (int index : indices) {
+            if (index >= 0) predictions.add(new Prediction(classes[index], probabilities[index]));
+        }
+        return predictions;
+    }
+
+    /***
+     * Method to get the softmax denominator of a subset of the classes, so the probabilities are renormalised
+     * over the subset without exponentiating the other classes
+     * @param logits the model outputs, only read at the subset's indices
+     * @param subset the class indices to include, or null to include every class
+     * @param max the largest logit of the subset, subtracted for numerical stability
+     * @return the sum of exp(logit - max) over the subset
+     */
+    protected static float softmaxDenominator(float[] logits, int[] subset, float max) {
+        double sum = 0.0;
+        int count = subset == null ? logits.length : subset.length;
+        for (int n = 0; n < count; n++) sum += Math.exp(logits[subset == null ? n : subset[n]] - max);
+        return (float) sum;
+    }
+
+    /***
+     * Method to read the scores of one batch entry from an engine's output buffer, dequantizing integer outputs
+     * with the scale and zero point of the output layout
+     * @param output the direct output buffer
+     * @param layout the layout of the output tensor
+     * @param batchIndex the batch entry to read
+     * @param scores the array to store the scores in, of at least the number of elements per batch entry
+     * @return the scores array
+     */
+    protected static float[] readScores(ByteBuffer output, TensorLayout layout, int batchIndex, float[] scores) {
+        return readScores(output, layout, batchIndex, scores, null);
+    }
+
+    /***
+     * Method to read the scores of a subset of the classes of one batch entry from an engine's output buffer,
+     * dequantizing integer outputs with the scale and zero point of the output layout
+     * @param output the direct output buffer
+     * @param layout the layout of the output tensor
+     * @param batchIndex the batch entry to read
+     * @param scores the array to store the scores in, of at least the number of elements per batch entry
+     * @param subset the class indices to read, or null to read every class; other entries are left untouched
+     * @return the scores array
+     */
+    protected static float[] readScores(ByteBuffer output, TensorLayout layout, int batchIndex, float[] scores, int[] subset) {
+        int count = layout.getElementsPerItem();
+        int base = batchIndex * count;
+
+        if (!layout.isQuantized()) {
+            output.clear();
+            FloatBuffer floats = output.asFloatBuffer();
+            if (subset == null) {
+                floats.position(base);
+                floats.get(scores, 0, count);
+            } else {
+                for (int index : subset) scores[index] = floats.get(base + index);
+            }
+        } else {
+            float scale = layout.getScale();
+            int zeroPoint = layout.getZeroPoint();
+            boolean unsigned = layout.getDataType() == TensorLayout.DataType.UINT8;
+            int read = subset == null ? count : subset.length;
+            for (int n = 0; n < read; n++) {
+                int i = subset == null ? n : subset[n];
+                byte raw = output.get(base + i);
+                scores[i] = ((unsigned ? raw & 0xFF : raw) - zeroPoint) * scale;
+            }
+        }
+        return scores;
+    }
+
+    /***
+     * Method to get a short description of the classifier's runtime statistics for display
+     * @return the formatted statistics or null if the classifier does not collect any
+     */
+    public String getStatistics() {
+        return null;
+    }
+
+    /***
+     * Method to get the longest side of the largest image the classifier feeds to its model(s). Camera
+     * frames only need to be this large (after center cropping) to be classified without losing detail.
+     * @return the largest input side in pixels, or 0 if unknown
+     */
+    public int getInputSize() {
+        return 0;
+    }
+
+    /***
+     * Method to release any threads and native resources held by the classifier once it is no longer used
+     */
+    public void close() {
+    }
 }
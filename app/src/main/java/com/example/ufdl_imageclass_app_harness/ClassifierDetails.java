@@ -1,5 +1,7 @@
 package com.example.ufdl_imageclass_app_harness;
 
+import java.util.List;
+
 /***
  A class to encapsulate the information required to build a Classifier
  */
@@ -14,6 +16,19 @@ public class ClassifierDetails {
     private float[] preProcessingNormalizationParams;   //[IMAGE_MEAN, IMAGE_STD]
     private float[] postProcessingNormalizationParams;  //[PROBABILITY_MEAN, PROBABILITY_STD]
 
+    //Optional runtime input resolutions for fully convolutional models
+    private List<InputResolution> resolutions;
+    private float latencyBudgetMs;
+
+    //Optional accuracy constraints for the autotuner
+    private float accuracy;             //top-1 accuracy of the model at its full input resolution, 0 if unknown
+    private float minAccuracy;          //lowest top-1 accuracy a tuned configuration may have, 0 for no constraint
+    private List<String> alternatives;  //other model files of the same network (e.g. the TensorFlow Lite export)
+
+    //Optional allow-list of the labels a deployment cares about
+    private String[] labelSubset;       //labels to predict, all classes if absent
+    private boolean renormaliseSubset;  //renormalise the confidences over the subset so they sum to 1
+
     /***
      * Default constructor for ClassifierDetails
      */
@@ -45,6 +60,14 @@ public class ClassifierDetails {
         return name;
     }
 
+    /***
+     * Method to point the details at another export of the same network sharing its JSON
+     * @param name the model name
+     */
+    void setName(String name) {
+        this.name = name;
+    }
+
     /***
      * Method to get the recommended width of the input image for the particular classifier
      * @return recommended width of the input image
@@ -68,4 +91,60 @@ public class ClassifierDetails {
     public String[] getClasses() {
         return classes;
     }
+
+    /***
+     * Method to get the input resolutions a fully convolutional model supports at runtime
+     * @return the supported resolutions or null if the model only supports its fixed input size
+     */
+    public List<InputResolution> getResolutions() {
+        return resolutions;
+    }
+
+    /***
+     * Method to get the per-frame latency budget used to pick the input resolution
+     * @return the latency budget in milliseconds, or 0 if the highest resolution should always be used
+     */
+    public float getLatencyBudgetMs() {
+        return latencyBudgetMs;
+    }
+
+    /***
+     * Method to get the measured top-1 accuracy of the model at its full input resolution
+     * @return the accuracy between 0 and 1, or 0 if unknown
+     */
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    /***
+     * Method to get the lowest top-1 accuracy a tuned execution plan may have
+     * @return the accuracy between 0 and 1, or 0 if there is no constraint
+     */
+    public float getMinAccuracy() {
+        return minAccuracy;
+    }
+
+    /***
+     * Method to get the other model files of the same network the autotuner may pick instead
+     * @return the alternative model names or null if there are none
+     */
+    public List<String> getAlternatives() {
+        return alternatives;
+    }
+
+    /***
+     * Method to get the labels the classifier's predictions are restricted to
+     * @return the allowed labels or null if every class may be predicted
+     */
+    public String[] getLabelSubset() {
+        return labelSubset;
+    }
+
+    /***
+     * Method to check whether the confidences are renormalised over the label subset
+     * @return true to renormalise the confidences so they sum to 1 over the subset
+     */
+    public boolean getRenormaliseSubset() {
+        return renormaliseSubset;
+    }
 }
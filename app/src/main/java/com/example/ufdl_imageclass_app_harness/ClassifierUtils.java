@@ -1,6 +1,10 @@
 package com.example.ufdl_imageclass_app_harness;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.util.Log;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
@@ -11,12 +15,18 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Locale;
 
 /***
  * A utility class to get classifier details from the assets folder in order to build a classifier.
  */
 
 public class ClassifierUtils {
+    //images are decoded no larger than this, which is more than any model input needs
+    public static final int MAX_DECODE_SIZE = 1024;
+
+    //configuration identities are remembered per app version, since assets only change with the APK
+    private static final String IDENTITY_PREFERENCES = "model_identity";
 
     /***
      * A method to find the absolute file path of a model in the assets folder.
@@ -43,6 +53,90 @@ public class ClassifierUtils {
         return null;
     }
 
+    /***
+     * A method to identify a model by its name and a hash of the model file in the assets folder.
+     * @param context the context
+     * @param assetName the name of the model
+     * @return the model identity hash
+     * @throws IOException if the model cannot be read from the assets folder
+     */
+    public static long modelIdentity(Context context, String assetName) throws IOException {
+        return hashAsset(context, ContentHash.update(ContentHash.SEED, assetName), assetName);
+    }
+
+    /***
+     * A method to identify the configuration a model is run with: the model file together with its model JSON,
+     * whose label subset, resolutions and normalisation parameters change the predictions as much as the model.
+     * Hashing the model file is slow, so the identity is computed once per app version.
+     * @param context the context
+     * @param assetName the name of the model file which is run
+     * @param model the name of the model whose JSON configures it
+     * @return the configuration identity hash
+     * @throws IOException if the model or its JSON cannot be read from the assets folder
+     */
+    public static long configurationIdentity(Context context, String assetName, String model) throws IOException {
+        SharedPreferences preferences = context.getSharedPreferences(IDENTITY_PREFERENCES, Context.MODE_PRIVATE);
+        String key = assetName + ":" + model + ":" + appVersion(context);
+        if (preferences.contains(key)) return preferences.getLong(key, 0);
+
+        long identity = hashAsset(context, modelIdentity(context, assetName), removeFileExtension(model, true) + ".json");
+        preferences.edit().putLong(key, identity).apply();
+        return identity;
+    }
+
+    /***
+     * A method to get the version of the installed app, which changes whenever its assets may have changed
+     * @param context the context
+     * @return the time the app was last installed or updated, or 0 if it cannot be read
+     */
+    public static long appVersion(Context context) {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
+    /***
+     * A method to decode an encoded image (e.g. the bytes of a JPEG file), subsampling it so its longest side
+     * doesn't exceed MAX_DECODE_SIZE
+     * @param encoded the encoded image
+     * @return the decoded bitmap or null if the image could not be decoded
+     */
+    public static Bitmap decodeImage(byte[] encoded) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(encoded, 0, encoded.length, options);
+
+        int sampleSize = 1;
+        while (Math.max(options.outWidth, options.outHeight) / (sampleSize * 2) >= MAX_DECODE_SIZE) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeByteArray(encoded, 0, encoded.length, options);
+    }
+
+    /***
+     * A method to add the contents of an asset to a hash
+     * @param context the context
+     * @param hash the hash so far
+     * @param assetName the name of the asset
+     * @return the updated hash
+     * @throws IOException if the asset cannot be read
+     */
+    private static long hashAsset(Context context, long hash, String assetName) throws IOException {
+        try (InputStream is = context.getAssets().open(assetName)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                hash = ContentHash.update(hash, buffer, 0, read);
+            }
+        }
+        return hash;
+    }
+
     /**
      * Method to remove the file extension from a filename string
      *
@@ -59,6 +153,36 @@ public class ClassifierUtils {
         return filename.replaceAll(extPattern, "");
     }
 
+    /***
+     * Method to check whether a model runs on PyTorch Mobile, either as full TorchScript (".pt") or as a
+     * lite-interpreter model (".ptl")
+     * @param modelName the model file name
+     * @return true if the model is a PyTorch model
+     */
+    public static boolean isPyTorchModel(String modelName) {
+        return modelName.endsWith(".pt") || modelName.endsWith(".ptl");
+    }
+
+    /***
+     * Method to check whether an asset is a composite classifier manifest (e.g. "Flowers.cascade.json")
+     * @param assetName the asset file name
+     * @return true if the asset is a composite manifest
+     */
+    public static boolean isCompositeManifest(String assetName) {
+        return assetName.endsWith(".cascade.json") || assetName.endsWith(".ensemble.json")
+                || assetName.endsWith(".multicrop.json") || assetName.endsWith(".remote.json");
+    }
+
+    /***
+     * Method to normalise a class label so that labels from different models can be matched,
+     * e.g. "black-eyed_susan" and "Black eyed susan" both become "black eyed susan"
+     * @param label the original label
+     * @return the normalised label
+     */
+    public static String normaliseLabel(String label) {
+        return label.trim().toLowerCase(Locale.ROOT).replace('_', ' ').replace('-', ' ');
+    }
+
     /***
      * A method to deserialize JSON model data to a ClassifierDetails object.
      * @param context the context
@@ -70,9 +194,40 @@ public class ClassifierUtils {
             String fileName = removeFileExtension(model, true);
             String filePath = assetFilePath(context, fileName + ".json");
             if (filePath != null) {
-                return new ObjectMapper().
+                ClassifierDetails details = new ObjectMapper().
                         setSerializationInclusion(JsonInclude.Include.NON_NULL)
                         .readValue(new File(filePath), ClassifierDetails.class);
+
+                // a lite-interpreter export shares the JSON of its TorchScript model, e.g. resnet18.ptl uses resnet18.json
+                if (model.endsWith(".ptl") && (removeFileExtension(model, false) + ".pt").equals(details.getName())) {
+                    details.setName(model);
+                }
+                return details;
+            }
+        } catch (IOException e) {
+            Log.e("TAG", e.getMessage());
+        }
+
+        return null;
+    }
+
+    /***
+     * A method to deserialize a JSON manifest from the assets folder (e.g. a cascade manifest).
+     * Unlike model JSON files, the manifest name keeps its inner extension, so "Flowers.cascade"
+     * is read from "Flowers.cascade.json".
+     * @param context the context
+     * @param manifest the manifest name without the trailing ".json"
+     * @param type the class to deserialize the manifest into
+     * @param <T> the manifest type
+     * @return the deserialized manifest. Returns null if the manifest doesn't exist in the assets folder.
+     */
+    public static <T> T deserializeManifestJSON(Context context, String manifest, Class<T> type) {
+        try {
+            String filePath = assetFilePath(context, manifest + ".json");
+            if (filePath != null) {
+                return new ObjectMapper()
+                        .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+                        .readValue(new File(filePath), type);
             }
         } catch (IOException e) {
             Log.e("TAG", e.getMessage());
@@ -80,4 +235,4 @@ public class ClassifierUtils {
 
         return null;
     }
-}
\ No newline at end of file
+}
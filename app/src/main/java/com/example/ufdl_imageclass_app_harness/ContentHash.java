@@ -0,0 +1,52 @@
+package com.example.ufdl_imageclass_app_harness;
+
+/***
+ * A utility class computing fast, non-cryptographic 64-bit content hashes (FNV-1a) of encoded images and model data.
+ */
+
+public class ContentHash {
+    public static final long SEED = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private ContentHash() {
+    }
+
+    /***
+     * Method to continue a hash over a range of bytes
+     * @param hash the hash so far, or SEED to start a new hash
+     * @param data the bytes to hash
+     * @param offset the offset of the first byte
+     * @param length the number of bytes to hash
+     * @return the updated hash
+     */
+    public static long update(long hash, byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= data[i] & 0xff;
+            hash *= PRIME;
+        }
+        return hash;
+    }
+
+    /***
+     * Method to hash a byte array
+     * @param data the bytes to hash
+     * @return the hash
+     */
+    public static long of(byte[] data) {
+        return update(SEED, data, 0, data.length);
+    }
+
+    /***
+     * Method to continue a hash with a string, e.g. to combine a model name with the model file hash
+     * @param hash the hash so far, or SEED to start a new hash
+     * @param value the string to hash
+     * @return the updated hash
+     */
+    public static long update(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/***
+ * A classifier which fans each frame out to several classifiers running in parallel on their own executors
+ * and merges their class probabilities by label using a weighted average. The full probability vectors are
+ * fused, aligned by normalised label, so a class ranked low by one member still contributes its probability.
+ * Members which miss the deadline are left out of the frame's result and are not given a new frame until they
+ * have finished the one they are working on.
+ */
+
+public class EnsembleClassifier extends Classifier {
+    //room for the frame copies of a few frames still being worked on by slow members
+    private static final long FRAME_POOL_BYTES = 24L * 1024 * 1024;
+
+    private final String[] names;
+    private final Classifier[] members;
+    private final float[] weights;
+    private final ExecutorService[] executors;
+    private final Future<float[]>[] pending;
+
+    //the union of the members' labels, and the index in it of each member's classes
+    private final String[] labels;
+    private final int[][] labelIndices;
+    private final long deadlineMs;
+    private final BitmapPool framePool = new BitmapPool(FRAME_POOL_BYTES);
+
+    //the run time of each member's latest frame, written by the member's executor
+    private final long[] runNanos;
+
+    //the latest latency of each member in milliseconds, or -1 if it missed the last deadline
+    private final float[] latencies;
+
+    /***
+     * Constructor to create an ensemble classifier
+     * @param context the context
+     * @param details the ensemble details naming the members, their weights and the deadline
+     * @throws IOException if any of the members could not be created
+     */
+    @SuppressWarnings("unchecked")
+    public EnsembleClassifier(Context context, EnsembleDetails details) throws IOException {
+        super();
+        int size = details.getMembers().size();
+        names = new String[size];
+        members = new Classifier[size];
+        weights = new float[size];
+        executors = new ExecutorService[size];
+        pending = new Future[size];
+        runNanos = new long[size];
+        latencies = new float[size];
+        deadlineMs = details.getDeadlineMs();
+
+        for (int i = 0; i < size; i++) {
+            EnsembleDetails.Member member = details.getMembers().get(i);
+            names[i] = member.getModel();
+            members[i] = createMember(context, member.getModel());
+            weights[i] = member.getWeight();
+            executors[i] = Executors.newSingleThreadExecutor();
+        }
+
+        Map<String, Integer> fused = new LinkedHashMap<>();
+        List<String> fusedLabels = new ArrayList<>();
+        labelIndices = new int[size][];
+        for (int i = 0; i < size; i++) {
+            String[] classes = members[i].getClasses();
+            labelIndices[i] = new int[classes.length];
+            for (int j = 0; j < classes.length; j++) {
+                String key = ClassifierUtils.normaliseLabel(classes[j]);
+                Integer index = fused.get(key);
+                if (index == null) {
+                    index = fusedLabels.size();
+                    fused.put(key, index);
+                    fusedLabels.add(classes[j]);
+                }
+                labelIndices[i][j] = index;
+            }
+        }
+        labels = fusedLabels.toArray(new String[0]);
+    }
+
+    /***
+     * A method to feed a bitmap to every member and merge their class probabilities by label
+     * @param bitmap the bitmap to feed the image classifiers
+     * @return A list containing the top 3 merged predictions, empty if every member missed the deadline
+     */
+    @Override
+    public List<Prediction> topKPredictions(Bitmap bitmap) {
+        long deadline = SystemClock.elapsedRealtime() + deadlineMs;
+
+        // only hand the frame to members which are not still busy with an earlier one
+        boolean[] submitted = new boolean[members.length];
+        int submissions = 0;
+        for (int i = 0; i < members.length; i++) {
+            submitted[i] = (pending[i] == null || pending[i].isDone()) && !executors[i].isShutdown();
+            if (submitted[i]) submissions++;
+        }
+
+        // members which miss the deadline keep reading the frame after this method has returned and the caller
+        // has recycled it, so they work on a shared copy which goes back to the pool when the last one finishes
+        SharedFrame frame = submissions > 0 ? SharedFrame.copyOf(bitmap, framePool, submissions) : null;
+        for (int i = 0; i < members.length; i++) {
+            if (!submitted[i]) continue;
+
+            Classifier member = members[i];
+            int index = i;
+            pending[i] = executors[i].submit(() -> {
+                try {
+                    long start = SystemClock.elapsedRealtimeNanos();
+                    float[] probabilities = member.classProbabilities(frame.getBitmap());
+                    runNanos[index] = SystemClock.elapsedRealtimeNanos() - start;
+                    return probabilities;
+                } finally {
+                    frame.release();
+                }
+            });
+        }
+
+        float[] scores = new float[labels.length];
+        float totalWeight = 0.0f;
+
+        for (int i = 0; i < members.length; i++) {
+            if (!submitted[i]) {
+                latencies[i] = -1;
+                continue;
+            }
+
+            try {
+                long remaining = Math.max(0, deadline - SystemClock.elapsedRealtime());
+                float[] probabilities = pending[i].get(remaining, TimeUnit.MILLISECONDS);
+                latencies[i] = runNanos[i] / 1e6f;
+                totalWeight += weights[i];
+
+                int[] indices = labelIndices[i];
+                for (int j = 0; j < indices.length; j++) {
+                    scores[indices[j]] += weights[i] * probabilities[j];
+                }
+            } catch (TimeoutException e) {
+                latencies[i] = -1;
+            } catch (ExecutionException | InterruptedException e) {
+                latencies[i] = -1;
+                Log.e("TAG", "Ensemble member " + names[i] + " failed: " + e.getMessage());
+            }
+        }
+
+        if (totalWeight <= 0.0f) return new ArrayList<>();
+
+        for (int j = 0; j < scores.length; j++) scores[j] /= totalWeight;
+        return predictionsOf(scores, labels, null);
+    }
+
+    /***
+     * Method to feed a bitmap to the ensemble and return a single prediction
+     * @param bitmap the bitmap to feed to the image classifiers
+     * @return the top merged prediction or null if every member missed the deadline
+     */
+    @Override
+    public Prediction predict(Bitmap bitmap) {
+        List<Prediction> predictions = topKPredictions(bitmap);
+        return predictions.isEmpty() ? null : predictions.get(0);
+    }
+
+    /***
+     * Method to get the union of the members' labels
+     * @return String array of the labels the ensemble can predict
+     */
+    @Override
+    public String[] getClasses() {
+        return labels;
+    }
+
+    /***
+     * Method to get the latest latency of each member side by side
+     * @return the formatted per-model latencies
+     */
+    @Override
+    public String getStatistics() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < members.length; i++) {
+            if (i > 0) builder.append('\n');
+            builder.append(names[i]).append(": ");
+            if (latencies[i] < 0) builder.append("missed deadline");
+            else builder.append(String.format(Locale.ROOT, "%.1f ms", latencies[i]));
+        }
+        return builder.toString();
+    }
+
+    /***
+     * Method to get the input size required by the largest ensemble member
+     * @return the largest input side in pixels
+     */
+    @Override
+    public int getInputSize() {
+        int inputSize = 0;
+        for (Classifier member : members) {
+            inputSize = Math.max(inputSize, member.getInputSize());
+        }
+        return inputSize;
+    }
+
+    /***
+     * Method to stop the member executors and release the members. A member which missed the deadline may still
+     * be classifying a frame, so each member is closed on its own executor once that frame is done, rather than
+     * freeing its model while it is in use.
+     */
+    @Override
+    public void close() {
+        for (int i = 0; i < members.length; i++) {
+            executors[i].execute(members[i]::close);
+            executors[i].shutdown();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import java.util.List;
+
+/***
+ A class to encapsulate the information required to build an EnsembleClassifier. Ensemble manifests are
+ stored in the assets folder as "[name].ensemble.json". The members' class probabilities (softmax for
+ PyTorch models) are averaged by label with the members' weights.
+ */
+
+public class EnsembleDetails {
+    private String name;
+    private List<Member> members;
+    private long deadlineMs = 200;
+
+    /***
+     * Default constructor for EnsembleDetails
+     */
+    public EnsembleDetails() {
+        super();
+    }
+
+    /***
+     * Method to get the ensemble name
+     * @return the ensemble name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /***
+     * Method to get the models taking part in the ensemble
+     * @return the ensemble members
+     */
+    public List<Member> getMembers() {
+        return members;
+    }
+
+    /***
+     * Method to get the time to wait for the members' results for a frame
+     * @return the deadline in milliseconds
+     */
+    public long getDeadlineMs() {
+        return deadlineMs;
+    }
+
+    /***
+     * A class to describe a single model taking part in the ensemble
+     */
+    public static class Member {
+        private String model;
+        private float weight = 1.0f;
+
+        /***
+         * Default constructor for an ensemble member
+         */
+        public Member() {
+            super();
+        }
+
+        /***
+         * Method to get the model name
+         * @return the model name
+         */
+        public String getModel() {
+            return model;
+        }
+
+        /***
+         * Method to get the weight of the member's scores in the weighted average
+         * @return the member weight
+         */
+        public float getWeight() {
+            return weight;
+        }
+    }
+}
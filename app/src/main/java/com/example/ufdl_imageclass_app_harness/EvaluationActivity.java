@@ -0,0 +1,86 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.TextView;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/***
+ * An activity which evaluates models over a labelled image folder on the device and writes a JSON report.
+ * It is started from the command line, e.g.
+ * adb shell am start -n com.example.ufdl_imageclass_app_harness/.EvaluationActivity --es dataset [folder] --es models resnet18.pt,Flowers.tflite --ez cache true
+ * The dataset defaults to the app's external "evaluation" folder and the models default to every model in the assets folder.
+ * With the cache extra, predictions are kept in the app's cache directory so images classified by an earlier run are
+ * not classified again.
+ */
+
+public class EvaluationActivity extends AppCompatActivity {
+    public static final String EXTRA_DATASET = "dataset";
+    public static final String EXTRA_MODELS = "models";
+    public static final String EXTRA_CACHE = "cache";
+    public static final String REPORT_FILE = "evaluation_report.json";
+    private static final String PREDICTION_CACHE_FILE = "evaluation.cache";
+    private static final long PREDICTION_CACHE_BYTES = 32L * 1024 * 1024;
+
+    private TextView progressTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_evaluation);
+        progressTextView = findViewById(R.id.evaluationProgressTextView);
+
+        String datasetPath = getIntent().getStringExtra(EXTRA_DATASET);
+        File dataset = datasetPath != null ? new File(datasetPath) : getExternalFilesDir("evaluation");
+        String models = getIntent().getStringExtra(EXTRA_MODELS);
+        boolean cache = getIntent().getBooleanExtra(EXTRA_CACHE, false);
+
+        new Thread(() -> runEvaluation(dataset, models, cache), "evaluation").start();
+    }
+
+    /***
+     * Method to run the evaluation and write the report
+     * @param dataset the root folder of the labelled images
+     * @param modelNames a comma separated list of model names or null to evaluate every model
+     * @param cache true to look up the predictions of earlier runs
+     */
+    private void runEvaluation(File dataset, String modelNames, boolean cache) {
+        PredictionCache predictionCache = null;
+        try {
+            if (cache) predictionCache = new PredictionCache(new File(getCacheDir(), PREDICTION_CACHE_FILE), PREDICTION_CACHE_BYTES);
+            ModelEvaluator evaluator = new ModelEvaluator(this, dataset, predictionCache, this::showProgress);
+
+            List<String> models = modelNames != null ? Arrays.asList(modelNames.split(",")) : evaluator.findModels();
+            EvaluationReport report = evaluator.evaluate(models);
+
+            File reportFile = new File(getExternalFilesDir(null), REPORT_FILE);
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportFile, report);
+            showProgress("Report written to " + reportFile.getAbsolutePath());
+        } catch (IOException e) {
+            showProgress("Evaluation failed: " + e.getMessage());
+        } finally {
+            if (predictionCache != null) {
+                showProgress(predictionCache.getStatistics());
+                predictionCache.close();
+            }
+        }
+    }
+
+    /***
+     * Method to log a progress message and show it on screen
+     * @param message the progress message
+     */
+    private void showProgress(String message) {
+        Log.i("Evaluation", message);
+        runOnUiThread(() -> progressTextView.append(message + "\n"));
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * The machine-readable result of evaluating models over a labelled image folder, serialized to JSON.
+ */
+
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class EvaluationReport {
+    String dataset;
+    String device;
+    long timestamp;
+    List<ModelResult> models = new ArrayList<>();
+
+    /***
+     * The accuracy, latency, throughput and memory figures of a single model
+     */
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    public static class ModelResult {
+        String model;
+        String framework;
+        //the execution plan the model was run with
+        String plan;
+        String error;
+
+        float loadMs;
+        //growth of the native heap and of the resident set size while the model was loaded
+        long loadNativeHeapBytes;
+        long loadResidentBytes;
+        int images;
+        //images whose predictions were found in the prediction cache, which are left out of the latencies
+        int cachedImages;
+        int unmatchedImages;
+        int topK;
+        float top1Accuracy;
+        float topKAccuracy;
+
+        float meanLatencyMs;
+        float p50LatencyMs;
+        float p90LatencyMs;
+        float p99LatencyMs;
+        float maxLatencyMs;
+
+        //images per second of inference time, and of wall time including decoding
+        float inferenceThroughput;
+        float endToEndThroughput;
+
+        long peakJavaHeapBytes;
+        long peakNativeHeapBytes;
+    }
+}
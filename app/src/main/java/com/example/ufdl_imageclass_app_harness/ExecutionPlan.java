@@ -0,0 +1,109 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import java.util.Locale;
+
+/***
+ A class to describe how a model is run on this device: which model file (the requested model or one of
+ its alternatives), how many threads, whether TensorFlow Lite uses XNNPACK and whether the input resolution
+ is fixed. Plans are found by the Autotuner and persisted as JSON.
+ */
+
+public class ExecutionPlan {
+    private String model;
+    private int numThreads;
+    private boolean useXnnpack;
+    private InputResolution resolution;     //fixed input resolution, or null to let the ResolutionScaler pick
+    private float latencyMs;                //median latency measured while tuning
+
+    /***
+     * Default constructor for ExecutionPlan
+     */
+    public ExecutionPlan() {
+        super();
+    }
+
+    /***
+     * Constructor to create an execution plan
+     * @param model the model file to run
+     * @param numThreads the number of inference threads
+     * @param useXnnpack true to use the XNNPACK delegate (TensorFlow Lite only)
+     * @param resolution the fixed input resolution, or null to pick it at runtime
+     */
+    public ExecutionPlan(String model, int numThreads, boolean useXnnpack, InputResolution resolution) {
+        this.model = model;
+        this.numThreads = numThreads;
+        this.useXnnpack = useXnnpack;
+        this.resolution = resolution;
+    }
+
+    /***
+     * A factory method to create a plan which runs a model at its native resolution only, so latencies measured
+     * with it aren't affected by the ResolutionScaler switching resolutions
+     * @param details the classifier details of the model
+     * @param numThreads the number of inference threads, or 0 for the default
+     * @param useXnnpack true to use the XNNPACK delegate (TensorFlow Lite only)
+     * @return the execution plan
+     */
+    public static ExecutionPlan atNativeResolution(ClassifierDetails details, int numThreads, boolean useXnnpack) {
+        return new ExecutionPlan(details.getName(), numThreads, useXnnpack,
+                new InputResolution(details.getWidth(), details.getHeight()));
+    }
+
+    /***
+     * Method to get the name of the model file to run
+     * @return the model name
+     */
+    public String getModel() {
+        return model;
+    }
+
+    /***
+     * Method to get the number of inference threads
+     * @return the thread count
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /***
+     * Method to check whether TensorFlow Lite should use the XNNPACK delegate
+     * @return true to use XNNPACK
+     */
+    public boolean getUseXnnpack() {
+        return useXnnpack;
+    }
+
+    /***
+     * Method to get the fixed input resolution
+     * @return the input resolution, or null if it is picked at runtime
+     */
+    public InputResolution getResolution() {
+        return resolution;
+    }
+
+    /***
+     * Method to get the median latency measured while tuning
+     * @return the latency in milliseconds
+     */
+    public float getLatencyMs() {
+        return latencyMs;
+    }
+
+    /***
+     * Method to set the median latency measured while tuning
+     * @param latencyMs the latency in milliseconds
+     */
+    public void setLatencyMs(float latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    /***
+     * Method to describe the plan for display
+     * @return the formatted description
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s  %d threads%s  %s  (%.1f ms)", model, numThreads,
+                useXnnpack ? " XNNPACK" : "", resolution != null ? resolution.toString() : "adaptive", latencyMs);
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageFormat;
+import android.media.Image;
+
+import com.otaliastudios.cameraview.frame.Frame;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/***
+ * A class to convert camera frames into bitmaps for classification. NV21 frames are converted to RGB directly
+ * by the multi-core ImageKernels. Bitmaps, NV21 and pixel arrays are leased from pools and reused between frames,
+ * so the converter is meant to be used from the single frame processing thread and every converted bitmap
+ * should be handed back with release().
+ */
+
+public class FrameConverter {
+    private final BitmapPool bitmapPool;
+    private final ScratchArrayPool arrayPool;
+    private final ImageKernels kernels = ImageKernels.getDefault();
+    private final BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+
+    /***
+     * Constructor to create a frame converter
+     * @param bitmapPoolBytes the byte budget of the bitmap pool
+     * @param arrayPoolBytes the byte budget of the scratch array pool
+     */
+    public FrameConverter(long bitmapPoolBytes, long arrayPoolBytes) {
+        this.bitmapPool = new BitmapPool(bitmapPoolBytes);
+        this.arrayPool = new ScratchArrayPool(arrayPoolBytes);
+    }
+
+    /***
+     * Method to get the pool of scratch arrays shared by the frame path
+     * @return the scratch array pool
+     */
+    public ScratchArrayPool getArrayPool() {
+        return arrayPool;
+    }
+
+    /***
+     * Method to convert a camera frame into a pooled bitmap
+     * @param frame the camera frame
+     * @return the bitmap of the frame or null if the frame could not be converted
+     */
+    public Bitmap convert(Frame frame) {
+        if (frame.getDataClass() == byte[].class) {
+            byte[] data = frame.getData();
+            if (frame.getFormat() == ImageFormat.NV21) {
+                return nv21ToBitmap(data, frame.getSize().getWidth(), frame.getSize().getHeight());
+            }
+            return decode(data, data.length, -1, -1);
+        } else if (frame.getDataClass() == Image.class) {
+            return toBitmap((Image) frame.getData());
+        }
+        return null;
+    }
+
+    /***
+     * Method to convert a recorded frame into a pooled bitmap, going through the same conversion as live frames
+     * @param frame the recorded frame
+     * @return the bitmap of the frame or null if the frame could not be converted
+     */
+    public Bitmap convert(RecordedFrame frame) {
+        ByteBuffer[] planes = frame.getPlanes();
+        if (planes.length >= 3) {
+            int[] rowStrides = frame.getRowStrides();
+            return toBitmap(planes[0], planes[1], planes[2], rowStrides[0], rowStrides[1], frame.getPixelStrides()[1],
+                    frame.getWidth(), frame.getHeight());
+        }
+
+        byte[] data = arrayPool.leaseBytes(planes[0].remaining());
+        planes[0].duplicate().get(data);
+        Bitmap bitmap = frame.getFormat() == ImageFormat.NV21
+                ? nv21ToBitmap(data, frame.getWidth(), frame.getHeight())
+                : decode(data, data.length, -1, -1);
+        arrayPool.release(data);
+        return bitmap;
+    }
+
+    /***
+     * Method to return a converted bitmap to the pool once it is no longer used
+     * @param bitmap the bitmap to return
+     */
+    public void release(Bitmap bitmap) {
+        bitmapPool.release(bitmap);
+    }
+
+    /***
+     * converts an image object into a bitmap
+     * @param image the image to convert
+     * @return a bitmap of the image
+     */
+    private Bitmap toBitmap(Image image) {
+        Image.Plane[] planes = image.getPlanes();
+        return toBitmap(planes[0].getBuffer(), planes[1].getBuffer(), planes[2].getBuffer(), planes[0].getRowStride(),
+                planes[1].getRowStride(), planes[1].getPixelStride(), image.getWidth(), image.getHeight());
+    }
+
+    /***
+     * converts YUV_420_888 planes into a bitmap, packing them into NV21 according to their strides
+     * @param yBuffer the Y plane
+     * @param uBuffer the U plane
+     * @param vBuffer the V plane
+     * @param yRowStride the row stride of the Y plane
+     * @param uvRowStride the row stride of the U and V planes
+     * @param uvPixelStride the pixel stride of the U and V planes
+     * @param width the image width
+     * @param height the image height
+     * @return a bitmap of the image
+     */
+    private Bitmap toBitmap(ByteBuffer yBuffer, ByteBuffer uBuffer, ByteBuffer vBuffer, int yRowStride, int uvRowStride,
+                            int uvPixelStride, int width, int height) {
+        byte[] nv21 = arrayPool.leaseBytes(width * height * 3 / 2);
+        kernels.yuv420ToNv21(yBuffer, uBuffer, vBuffer, yRowStride, uvRowStride, uvPixelStride, width, height, nv21);
+
+        Bitmap bitmap = nv21ToBitmap(nv21, width, height);
+        arrayPool.release(nv21);
+        return bitmap;
+    }
+
+    /***
+     * converts NV21 data into a pooled bitmap, converting the pixels in parallel stripes
+     * @param nv21 the NV21 data
+     * @param width the image width
+     * @param height the image height
+     * @return a bitmap of the image
+     */
+    private Bitmap nv21ToBitmap(byte[] nv21, int width, int height) {
+        int[] argb = arrayPool.leaseInts(width * height);
+        kernels.nv21ToArgb(nv21, width, height, argb);
+
+        Bitmap bitmap = bitmapPool.lease(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.setPixels(argb, 0, width, 0, 0, width, height);
+        arrayPool.release(argb);
+        return bitmap;
+    }
+
+    /***
+     * Method to decode an encoded image into a pooled bitmap
+     * @param data the encoded image
+     * @param length the number of bytes of encoded data
+     * @param width the image width or -1 if unknown
+     * @param height the image height or -1 if unknown
+     * @return the decoded bitmap or null if the data could not be decoded
+     */
+    private Bitmap decode(byte[] data, int length, int width, int height) {
+        if (width < 0 || height < 0) {
+            decodeOptions.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(data, 0, length, decodeOptions);
+            decodeOptions.inJustDecodeBounds = false;
+            width = decodeOptions.outWidth;
+            height = decodeOptions.outHeight;
+            if (width <= 0 || height <= 0) return null;
+        }
+
+        Bitmap leased = bitmapPool.lease(width, height, Bitmap.Config.ARGB_8888);
+        decodeOptions.inBitmap = leased;
+        decodeOptions.inMutable = true;
+
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(data, 0, length, decodeOptions);
+        } catch (IllegalArgumentException e) {
+            // the pooled bitmap could not be reused for this image, decode into a new one instead
+            decodeOptions.inBitmap = null;
+            bitmap = BitmapFactory.decodeByteArray(data, 0, length, decodeOptions);
+        }
+        decodeOptions.inBitmap = null;
+
+        if (bitmap != leased) bitmapPool.release(leased);
+        return bitmap;
+    }
+
+    /***
+     * Method to get the pool hit rates for display
+     * @return the formatted statistics
+     */
+    public String getStatistics() {
+        return String.format(Locale.ROOT, "Pool hits: bitmaps %.0f%%  arrays %.0f%%",
+                bitmapPool.getHitRate() * 100.0f, arrayPool.getHitRate() * 100.0f);
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.media.Image;
+import android.util.Log;
+
+import com.otaliastudios.cameraview.frame.Frame;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * A class to record raw camera frames into a compact container file for replaying with FrameReplayer. The planes
+ * of each frame are written as they are, with their row and pixel strides, by a FrameWriter, which describes the
+ * container format.
+ *
+ * The frame thread only copies the planes into one of a few preallocated slots and queues it; a background thread
+ * does the file writes, so recording doesn't add disk latency to the frames being recorded. When every slot is
+ * waiting to be written the frame is dropped and counted rather than stalling the frame thread.
+ */
+
+public class FrameRecorder implements Closeable {
+    private static final int SLOTS = 4;
+
+    private final FrameWriter writer;
+    private final BlockingQueue<Slot> free = new ArrayBlockingQueue<>(SLOTS);
+    private final BlockingQueue<Slot> queued = new ArrayBlockingQueue<>(SLOTS);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writerThread;
+    private volatile boolean closing;
+    private volatile IOException writeError;
+
+    /***
+     * The copy of a frame waiting to be written
+     */
+    private static class Slot {
+        long time;
+        int width;
+        int height;
+        int rotationToUser;
+        int rotationToView;
+        int format;
+        int planeCount;
+        final ByteBuffer[] planes = new ByteBuffer[FrameWriter.MAX_PLANES];
+        final int[] rowStrides = new int[FrameWriter.MAX_PLANES];
+        final int[] pixelStrides = new int[FrameWriter.MAX_PLANES];
+
+        /***
+         * Method to copy a plane into the slot, growing its buffer only if the plane is larger than any before
+         * @param index the plane index
+         * @param plane the plane data, which is not consumed
+         * @param rowStride the row stride of the plane
+         * @param pixelStride the pixel stride of the plane
+         */
+        void copy(int index, ByteBuffer plane, int rowStride, int pixelStride) {
+            ByteBuffer source = plane.duplicate();
+            if (planes[index] == null || planes[index].capacity() < source.remaining()) {
+                planes[index] = ByteBuffer.allocateDirect(source.remaining());
+            }
+            planes[index].clear();
+            planes[index].put(source);
+            planes[index].flip();
+            rowStrides[index] = rowStride;
+            pixelStrides[index] = pixelStride;
+        }
+    }
+
+    /***
+     * Constructor to create a frame recorder, replacing any existing recording, and start its writer thread
+     * @param file the recording file
+     * @throws IOException if the file cannot be created
+     */
+    public FrameRecorder(File file) throws IOException {
+        writer = new FrameWriter(file);
+        for (int i = 0; i < SLOTS; i++) free.add(new Slot());
+
+        writerThread = new Thread(this::drain, "frame-recorder");
+        writerThread.setPriority(Thread.MIN_PRIORITY);
+        writerThread.start();
+    }
+
+    /***
+     * Method to record a camera frame. Must be called from the frame processor before the frame is released. The
+     * planes are copied, so the frame can be released as soon as this returns.
+     * @param frame the camera frame
+     */
+    public void record(Frame frame) {
+        Slot slot = closing || writeError != null ? null : free.poll();
+        if (slot == null) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        if (frame.getDataClass() == Image.class) {
+            Image.Plane[] imagePlanes = ((Image) frame.getData()).getPlanes();
+            slot.planeCount = Math.min(imagePlanes.length, FrameWriter.MAX_PLANES);
+            for (int i = 0; i < slot.planeCount; i++) {
+                slot.copy(i, imagePlanes[i].getBuffer(), imagePlanes[i].getRowStride(), imagePlanes[i].getPixelStride());
+            }
+        } else {
+            byte[] data = frame.getData();
+            slot.planeCount = 1;
+            slot.copy(0, ByteBuffer.wrap(data), frame.getSize().getWidth(), 1);
+        }
+
+        slot.time = frame.getTime();
+        slot.width = frame.getSize().getWidth();
+        slot.height = frame.getSize().getHeight();
+        slot.rotationToUser = frame.getRotationToUser();
+        slot.rotationToView = frame.getRotationToView();
+        slot.format = frame.getFormat();
+        queued.add(slot);
+    }
+
+    /***
+     * Method run by the writer thread to write the queued frames until the recorder is closed and every queued
+     * frame has been written
+     */
+    private void drain() {
+        try {
+            while (!closing || !queued.isEmpty()) {
+                Slot slot = queued.poll(100, TimeUnit.MILLISECONDS);
+                if (slot == null) continue;
+
+                try {
+                    if (writeError == null) {
+                        writer.write(slot.time, slot.width, slot.height, slot.rotationToUser, slot.rotationToView,
+                                slot.format, slot.planes, slot.rowStrides, slot.pixelStrides, slot.planeCount);
+                    }
+                } catch (IOException e) {
+                    // later frames are dropped, since the recording can't be continued
+                    writeError = e;
+                    Log.e("TAG", "Error: Cannot record frame: " + e.getMessage());
+                } finally {
+                    free.add(slot);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /***
+     * Method to get the number of frames written so far
+     * @return the frame count
+     */
+    public int getFrames() {
+        return writer.getFrames();
+    }
+
+    /***
+     * Method to get the number of frames which were not recorded because the writer fell behind or failed
+     * @return the dropped frame count
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /***
+     * Method to write the queued frames, stop the writer thread and close the recording file
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer.close();
+        Log.i("Recorder", "Recorded " + getFrames() + " frames, dropped " + getDropped());
+    }
+}
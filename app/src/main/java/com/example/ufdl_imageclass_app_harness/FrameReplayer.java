@@ -0,0 +1,137 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/***
+ * A class to read back the frames of a FrameWriter recording. The recording is memory mapped in segments, which
+ * always end on a record boundary, and the frames' planes are views into the mapping, so frames are replayed
+ * without copying and recordings may be larger than a single mapping (2 GB). It only depends on java.nio, so
+ * recordings can also be read in a plain JVM.
+ */
+
+public class FrameReplayer implements Closeable {
+    static final long SEGMENT_BYTES = 256L * 1024 * 1024;
+
+    private final File recording;
+    private final RandomAccessFile file;
+    private final long length;
+    private final long segmentBytes;
+    private MappedByteBuffer mapping;
+    private long mappingStart;
+
+    /***
+     * Constructor to open a recording
+     * @param recording the recording file
+     * @throws IOException if the file cannot be mapped or is not a frame recording
+     */
+    public FrameReplayer(File recording) throws IOException {
+        this(recording, SEGMENT_BYTES);
+    }
+
+    /***
+     * Constructor to open a recording mapped in segments of a given size
+     * @param recording the recording file
+     * @param segmentBytes the preferred size of each mapped segment, enlarged for records which don't fit
+     * @throws IOException if the file cannot be mapped or is not a frame recording
+     */
+    FrameReplayer(File recording, long segmentBytes) throws IOException {
+        this.recording = recording;
+        this.file = new RandomAccessFile(recording, "r");
+        this.length = file.length();
+        this.segmentBytes = segmentBytes;
+
+        try {
+            byte[] magic = new byte[FrameWriter.MAGIC.length];
+            if (length < magic.length) throw new IOException(recording + " is not a frame recording");
+            file.readFully(magic);
+            if (!Arrays.equals(magic, FrameWriter.MAGIC)) throw new IOException(recording + " is not a frame recording");
+            map(magic.length, 0);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /***
+     * Method to map the segment starting at a file offset
+     * @param start the file offset of the segment
+     * @param minimumBytes the number of bytes the segment must hold if the file is long enough
+     * @throws IOException if the segment cannot be mapped
+     */
+    private void map(long start, long minimumBytes) throws IOException {
+        long size = Math.min(Math.max(segmentBytes, minimumBytes), length - start);
+        if (size > Integer.MAX_VALUE) throw new IOException("Record at " + start + " of " + recording + " is too large to map");
+        mapping = file.getChannel().map(FileChannel.MapMode.READ_ONLY, start, size);
+        mappingStart = start;
+    }
+
+    /***
+     * Method to go back to the first frame of the recording
+     * @throws IOException if the first segment cannot be mapped
+     */
+    public void rewind() throws IOException {
+        map(FrameWriter.MAGIC.length, 0);
+    }
+
+    /***
+     * Method to read the next frame, mapping the next segment once the current one is used up. A truncated
+     * trailing record is treated as the end of the recording.
+     * @return the next frame or null at the end of the recording
+     * @throws IOException if a segment cannot be mapped
+     */
+    public RecordedFrame next() throws IOException {
+        if (mapping.remaining() < 4 + FrameWriter.FRAME_HEADER_BYTES || mapping.getInt(mapping.position()) > mapping.remaining() - 4) {
+            long position = mappingStart + mapping.position();
+            if (length - position < 4 + FrameWriter.FRAME_HEADER_BYTES) return null;
+
+            // the frames already returned keep the previous segment mapped until they are garbage collected
+            file.seek(position);
+            long recordBytes = 4 + (file.readInt() & 0xFFFFFFFFL);
+            if (recordBytes > length - position) return null;
+            map(position, recordBytes);
+        }
+
+        int recordLength = mapping.getInt();
+        int recordEnd = mapping.position() + recordLength;
+        long time = mapping.getLong();
+        int width = mapping.getInt();
+        int height = mapping.getInt();
+        int rotationToUser = mapping.getInt();
+        int rotationToView = mapping.getInt();
+        int format = mapping.getInt();
+        int planeCount = mapping.getInt();
+
+        ByteBuffer[] planes = new ByteBuffer[planeCount];
+        int[] rowStrides = new int[planeCount];
+        int[] pixelStrides = new int[planeCount];
+        for (int i = 0; i < planeCount; i++) {
+            rowStrides[i] = mapping.getInt();
+            pixelStrides[i] = mapping.getInt();
+            int planeLength = mapping.getInt();
+
+            ByteBuffer plane = mapping.slice();
+            plane.limit(planeLength);
+            planes[i] = plane.asReadOnlyBuffer();
+            mapping.position(mapping.position() + planeLength);
+        }
+        mapping.position(recordEnd);
+
+        return new RecordedFrame(time, width, height, rotationToUser, rotationToView, format, planes, rowStrides, pixelStrides);
+    }
+
+    /***
+     * Method to close the recording
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/***
+ * A class to write frames into the container format read by FrameReplayer. It only depends on java.nio, so the
+ * format can be written and tested in a plain JVM; FrameRecorder feeds it the planes of camera frames.
+ *
+ * File layout (big endian): [8 byte magic "UFDLFRM1"] followed by one record per frame:
+ * [int recordLength][long time][int width][int height][int rotationToUser][int rotationToView][int format][int planeCount]
+ * {[int rowStride][int pixelStride][int length][length bytes]}*planeCount
+ */
+
+public class FrameWriter implements Closeable {
+    public static final byte[] MAGIC = {'U', 'F', 'D', 'L', 'F', 'R', 'M', '1'};
+    static final int FRAME_HEADER_BYTES = 8 + 6 * 4;
+    static final int PLANE_HEADER_BYTES = 3 * 4;
+    static final int MAX_PLANES = 3;
+
+    private final FileChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocateDirect(4 + FRAME_HEADER_BYTES).order(ByteOrder.BIG_ENDIAN);
+    private final ByteBuffer[] writeBuffers = new ByteBuffer[2];
+    private int frames;
+
+    /***
+     * Constructor to create a frame writer, replacing any existing recording
+     * @param file the recording file
+     * @throws IOException if the file cannot be created
+     */
+    public FrameWriter(File file) throws IOException {
+        channel = new FileOutputStream(file).getChannel();
+        channel.write(ByteBuffer.wrap(MAGIC));
+    }
+
+    /***
+     * Method to write a frame as one record. The remaining bytes of each plane are written and consumed.
+     * @param time the frame timestamp in milliseconds
+     * @param width the frame width
+     * @param height the frame height
+     * @param rotationToUser the rotation to the user orientation
+     * @param rotationToView the rotation to the view orientation
+     * @param format the ImageFormat of the frame data
+     * @param planes the frame planes
+     * @param rowStrides the row stride of each plane
+     * @param pixelStrides the pixel stride of each plane
+     * @param planeCount the number of planes to write
+     * @throws IOException if the frame cannot be written
+     */
+    public synchronized void write(long time, int width, int height, int rotationToUser, int rotationToView, int format,
+                                   ByteBuffer[] planes, int[] rowStrides, int[] pixelStrides, int planeCount) throws IOException {
+        int recordLength = FRAME_HEADER_BYTES;
+        for (int i = 0; i < planeCount; i++) {
+            recordLength += PLANE_HEADER_BYTES + planes[i].remaining();
+        }
+
+        header.clear();
+        header.putInt(recordLength).putLong(time).putInt(width).putInt(height)
+                .putInt(rotationToUser).putInt(rotationToView).putInt(format).putInt(planeCount);
+        header.flip();
+        while (header.hasRemaining()) channel.write(header);
+
+        // each plane header is written with its data in a single gathering write
+        for (int i = 0; i < planeCount; i++) {
+            header.clear();
+            header.putInt(rowStrides[i]).putInt(pixelStrides[i]).putInt(planes[i].remaining());
+            header.flip();
+            writeBuffers[0] = header;
+            writeBuffers[1] = planes[i];
+            while (header.hasRemaining() || planes[i].hasRemaining()) channel.write(writeBuffers);
+        }
+        Arrays.fill(writeBuffers, null);
+        frames++;
+    }
+
+    /***
+     * Method to get the number of frames written so far
+     * @return the frame count
+     */
+    public synchronized int getFrames() {
+        return frames;
+    }
+
+    /***
+     * Method to close the recording file
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+/***
+ * A view drawn over the camera preview which shades each crop of a multi-crop classifier by the score
+ * of the top predicted class in that crop.
+ */
+
+public class HeatmapOverlayView extends View {
+    private static final int MAX_ALPHA = 160;
+
+    private final Paint paint = new Paint();
+    private final RectF drawRect = new RectF();
+    private RectF[] regions;
+    private float[] heat;
+    private int rotation;
+
+    /***
+     * Constructor used when inflating the view from XML
+     * @param context the context
+     * @param attrs the view attributes
+     */
+    public HeatmapOverlayView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        paint.setStyle(Paint.Style.FILL);
+    }
+
+    /***
+     * Method to update the heatmap from any thread
+     * @param regions the crop regions as fractions of the frame size
+     * @param heat the score of each crop between 0 and 1
+     * @param rotation the clockwise rotation in degrees from the frame to the view
+     */
+    public synchronized void setHeatmap(RectF[] regions, float[] heat, int rotation) {
+        this.regions = regions;
+        this.heat = heat;
+        this.rotation = rotation;
+        postInvalidate();
+    }
+
+    /***
+     * Method to remove the heatmap from any thread
+     */
+    public synchronized void clear() {
+        regions = null;
+        heat = null;
+        postInvalidate();
+    }
+
+    /***
+     * Draws each crop region shaded by its score
+     * @param canvas the canvas to draw on
+     */
+    @Override
+    protected synchronized void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (regions == null || heat == null) return;
+
+        for (int i = 0; i < regions.length; i++) {
+            rotate(regions[i], rotation, drawRect);
+            float score = Math.max(0.0f, Math.min(1.0f, heat[i]));
+            paint.setColor(Color.argb(Math.round(score * MAX_ALPHA), 0xFA, 0xA6, 0x1A));
+            canvas.drawRect(drawRect.left * getWidth(), drawRect.top * getHeight(),
+                    drawRect.right * getWidth(), drawRect.bottom * getHeight(), paint);
+        }
+    }
+
+    /***
+     * Method to rotate a region of the unit square clockwise by a multiple of 90 degrees
+     * @param region the region to rotate
+     * @param rotation the rotation in degrees
+     * @param out the rotated region
+     */
+    private static void rotate(RectF region, int rotation, RectF out) {
+        switch ((rotation % 360 + 360) % 360) {
+            case 90:
+                out.set(1 - region.bottom, region.left, 1 - region.top, region.right);
+                break;
+            case 180:
+                out.set(1 - region.right, 1 - region.bottom, 1 - region.left, 1 - region.top);
+                break;
+            case 270:
+                out.set(region.top, 1 - region.right, region.bottom, 1 - region.left);
+                break;
+            default:
+                out.set(region);
+        }
+    }
+}
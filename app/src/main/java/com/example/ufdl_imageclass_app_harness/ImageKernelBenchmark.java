@@ -0,0 +1,111 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/***
+ * A benchmark of the ImageKernels at 720p, 1080p and 4K input, run with 1, 2, 4, ... up to the given number of
+ * threads, printing the median time of each kernel and its speedup over a single thread as CSV. The kernels
+ * don't depend on Android, so it runs on any JVM as well as on a device:
+ * java ImageKernelBenchmark [max threads] [runs] > kernels.csv
+ */
+
+public class ImageKernelBenchmark {
+    private static final int[][] SIZES = {{1280, 720}, {1920, 1080}, {3840, 2160}};
+    private static final int TENSOR_SIZE = 224;
+    private static final int WARMUP_RUNS = 5;
+
+    /***
+     * A kernel invocation to time
+     */
+    private interface Task {
+        /***
+         * Method to run the kernel once
+         * @param kernels the kernels to run it with
+         */
+        void run(ImageKernels kernels);
+    }
+
+    /***
+     * Runs the benchmark and writes the results to standard output
+     * @param args the largest thread count (all cores by default) and the number of timed runs (20 by default)
+     */
+    public static void main(String[] args) {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < maxThreads; threads *= 2) threadCounts.add(threads);
+        threadCounts.add(maxThreads);
+
+        System.out.println("input,kernel,threads,median_ms,speedup");
+        for (int[] size : SIZES) {
+            int width = size[0];
+            int height = size[1];
+            int square = Math.min(width, height);
+            int left = (width - square) / 2;
+            int top = (height - square) / 2;
+
+            byte[] nv21 = new byte[width * height * 3 / 2];
+            new Random(0).nextBytes(nv21);
+            int[] argb = new int[width * height];
+            int[] resized = new int[(width / 2) * (height / 2)];
+
+            TensorLayout layout = new TensorLayout(TensorLayout.Order.NCHW, TensorLayout.DataType.FLOAT32,
+                    new int[]{1, 3, TENSOR_SIZE, TENSOR_SIZE}, 1.0f, 0);
+            ByteBuffer tensor = layout.allocate();
+            FloatBuffer floats = tensor.asFloatBuffer();
+            float[] mean = {123.675f, 116.28f, 103.53f};
+            float[] inverseStd = {1 / 58.395f, 1 / 57.12f, 1 / 57.375f};
+            ImageKernels.ColumnMap halfColumns = new ImageKernels.ColumnMap().set(0, width, width / 2, true);
+            ImageKernels.ColumnMap tensorColumns = new ImageKernels.ColumnMap().set(left, square, TENSOR_SIZE, true);
+
+            String input = width + "x" + height;
+            Task[] tasks = {
+                    kernels -> kernels.nv21ToArgb(nv21, width, height, argb),
+                    kernels -> kernels.resize(argb, width, halfColumns, 0, height, resized, height / 2),
+                    kernels -> kernels.normalise(argb, width, tensorColumns, top, square, mean, inverseStd, layout,
+                            tensor, floats, 0)
+            };
+            String[] names = {"nv21_to_argb", "resize_bilinear_half", "normalise_224_nchw"};
+
+            for (int t = 0; t < tasks.length; t++) {
+                float single = 0.0f;
+                for (int threads : threadCounts) {
+                    ImageKernels kernels = new ImageKernels(threads);
+                    float median = time(tasks[t], kernels, runs);
+                    kernels.close();
+
+                    if (threads == 1) single = median;
+                    System.out.println(String.format(Locale.ROOT, "%s,%s,%d,%.3f,%.2f",
+                            input, names[t], threads, median, single / median));
+                }
+            }
+        }
+    }
+
+    /***
+     * Method to time a kernel
+     * @param task the kernel invocation
+     * @param kernels the kernels to run it with
+     * @param runs the number of timed runs
+     * @return the median time in milliseconds
+     */
+    private static float time(Task task, ImageKernels kernels, int runs) {
+        for (int i = 0; i < WARMUP_RUNS; i++) task.run(kernels);
+
+        long[] times = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            task.run(kernels);
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[runs / 2] / 1e6f;
+    }
+}
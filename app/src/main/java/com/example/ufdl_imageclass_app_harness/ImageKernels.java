@@ -0,0 +1,397 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/***
+ * A set of pixel kernels which split their output into row stripes processed in parallel on a bounded fork-join
+ * pool: NV21 to ARGB conversion, nearest neighbour or bilinear resizing of a region and per-channel mean/std
+ * normalisation of a region into an NCHW or NHWC tensor, as well as packing strided YUV_420_888 planes into NV21.
+ * Regions are read in place through the source's row stride, so cropping needs no separate copy. Every
+ * output row is computed independently from the source, so stripes never share state; images smaller than a
+ * threshold are processed on the calling thread, where the cost of forking would outweigh the work. Pixels are
+ * ARGB ints as returned by Bitmap.getPixels, so the kernels don't depend on Android classes and can be benchmarked
+ * on any JVM.
+ */
+
+public class ImageKernels {
+    /***
+     * The number of output pixels below which a kernel runs on the calling thread
+     */
+    public static final int MIN_PARALLEL_PIXELS = 32 * 1024;
+
+    //fixed-point (16 bit) coefficients of the full-range BT.601 (JFIF) YUV to RGB conversion
+    private static final int V_TO_R = 91881;
+    private static final int U_TO_G = 22554;
+    private static final int V_TO_G = 46802;
+    private static final int U_TO_B = 116130;
+
+    private static ImageKernels defaultKernels;
+
+    private final int parallelism;
+    private final int minParallelPixels;
+    private final ForkJoinPool pool;
+
+    /***
+     * A kernel computing a range of output rows
+     */
+    public interface RowKernel {
+        /***
+         * Method to compute a stripe of output rows
+         * @param startRow the first row of the stripe
+         * @param endRow the row after the last row of the stripe
+         */
+        void run(int startRow, int endRow);
+    }
+
+    /***
+     * Constructor to create image kernels running on their own pool
+     * @param parallelism the number of threads, 1 to run every kernel on the calling thread
+     */
+    public ImageKernels(int parallelism) {
+        this(parallelism, MIN_PARALLEL_PIXELS);
+    }
+
+    /***
+     * Constructor to create image kernels running on their own pool
+     * @param parallelism the number of threads, 1 to run every kernel on the calling thread
+     * @param minParallelPixels the number of output pixels below which a kernel runs on the calling thread
+     */
+    public ImageKernels(int parallelism, int minParallelPixels) {
+        this.parallelism = Math.max(1, parallelism);
+        this.minParallelPixels = minParallelPixels;
+        this.pool = this.parallelism > 1 ? new ForkJoinPool(this.parallelism) : null;
+    }
+
+    /***
+     * Method to get the kernels shared by the frame path, using every core
+     * @return the shared image kernels
+     */
+    public static synchronized ImageKernels getDefault() {
+        if (defaultKernels == null) defaultKernels = new ImageKernels(Runtime.getRuntime().availableProcessors());
+        return defaultKernels;
+    }
+
+    /***
+     * Method to get the number of threads the kernels run on
+     * @return the parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /***
+     * Method to run a kernel over every output row, split into stripes processed in parallel when the output is
+     * large enough. Returns once every row has been computed.
+     * @param rows the number of output rows
+     * @param pixelsPerRow the number of output pixels per row
+     * @param kernel the kernel computing a stripe of rows
+     */
+    public void forEachStripe(int rows, int pixelsPerRow, RowKernel kernel) {
+        if (pool == null || rows < 2 || (long) rows * pixelsPerRow < minParallelPixels) {
+            kernel.run(0, rows);
+            return;
+        }
+
+        // a couple of stripes per thread so a slow core doesn't hold up the whole image
+        int stripeRows = Math.max(1, (rows + parallelism * 2 - 1) / (parallelism * 2));
+        pool.invoke(new Stripe(kernel, 0, rows, stripeRows));
+    }
+
+    /***
+     * Method to convert NV21 data (a Y plane followed by interleaved V and U samples at half resolution) into
+     * ARGB pixels
+     * @param nv21 the NV21 data
+     * @param width the image width
+     * @param height the image height
+     * @param argb the array to store the width * height pixels in
+     */
+    public void nv21ToArgb(final byte[] nv21, final int width, final int height, final int[] argb) {
+        final int chromaOffset = width * height;
+        forEachStripe(height, width, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                int yIndex = y * width;
+                int uvIndex = chromaOffset + (y >> 1) * width;
+
+                for (int x = 0; x < width; x++) {
+                    int luma = (nv21[yIndex + x] & 0xFF) << 16;
+                    int uv = uvIndex + (x & ~1);
+                    int v = (nv21[uv] & 0xFF) - 128;
+                    int u = (nv21[uv + 1] & 0xFF) - 128;
+
+                    int r = clamp((luma + V_TO_R * v) >> 16);
+                    int g = clamp((luma - U_TO_G * u - V_TO_G * v) >> 16);
+                    int b = clamp((luma + U_TO_B * u) >> 16);
+                    argb[yIndex + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+                }
+            }
+        });
+    }
+
+    /***
+     * Method to pack the planes of a YUV_420_888 image into NV21, honouring the row and pixel strides of the
+     * planes, which are padded beyond the image width on many devices
+     * @param yPlane the Y plane, from its position
+     * @param uPlane the U plane, from its position
+     * @param vPlane the V plane, from its position
+     * @param yRowStride the row stride of the Y plane (its pixel stride is always 1)
+     * @param uvRowStride the row stride shared by the U and V planes
+     * @param uvPixelStride the pixel stride shared by the U and V planes
+     * @param width the image width
+     * @param height the image height
+     * @param nv21 the array to store the width * height * 3 / 2 bytes of NV21 data in
+     */
+    public void yuv420ToNv21(final ByteBuffer yPlane, final ByteBuffer uPlane, final ByteBuffer vPlane, final int yRowStride,
+                             final int uvRowStride, final int uvPixelStride, final int width, final int height, final byte[] nv21) {
+        final int yStart = yPlane.position();
+        forEachStripe(height, width, (startRow, endRow) -> {
+            ByteBuffer y = yPlane.duplicate();
+            for (int row = startRow; row < endRow; row++) {
+                y.position(yStart + row * yRowStride);
+                y.get(nv21, row * width, width);
+            }
+        });
+
+        final int chromaOffset = width * height;
+        final int uStart = uPlane.position();
+        final int vStart = vPlane.position();
+        forEachStripe(height / 2, width, (startRow, endRow) -> {
+            for (int row = startRow; row < endRow; row++) {
+                int index = chromaOffset + row * width;
+                int offset = row * uvRowStride;
+                for (int x = 0; x < width / 2; x++, offset += uvPixelStride) {
+                    nv21[index++] = vPlane.get(vStart + offset);
+                    nv21[index++] = uPlane.get(uStart + offset);
+                }
+            }
+        });
+    }
+
+    /***
+     * Method to resize a region of an image
+     * @param source the source pixels
+     * @param sourceWidth the width (row stride) of the source
+     * @param columns the column map from the region to the output width
+     * @param top the top edge of the region
+     * @param regionHeight the height of the region
+     * @param destination the array to store the output pixels in
+     * @param height the output height
+     */
+    public void resize(final int[] source, final int sourceWidth, final ColumnMap columns, final int top, final int regionHeight,
+                       final int[] destination, final int height) {
+        final int width = columns.width;
+        forEachStripe(height, width, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                float sourceY = sourceRow(y, height, regionHeight, columns.bilinear);
+                int row0 = (top + (int) sourceY) * sourceWidth;
+                int row1 = (top + Math.min((int) sourceY + 1, regionHeight - 1)) * sourceWidth;
+                float yWeight = sourceY - (int) sourceY;
+
+                for (int x = 0; x < width; x++) {
+                    if (!columns.bilinear) {
+                        destination[y * width + x] = source[row0 + columns.x0[x]];
+                        continue;
+                    }
+
+                    int pixel = 0xFF000000;
+                    for (int shift = 16; shift >= 0; shift -= 8) {
+                        pixel |= Math.round(bilinear(source, row0, row1, columns, x, yWeight, shift)) << shift;
+                    }
+                    destination[y * width + x] = pixel;
+                }
+            }
+        });
+    }
+
+    /***
+     * Method to resize a region of an image and normalise each channel with (pixel - mean) / std into one batch
+     * entry of a tensor, quantizing the values for integer tensors
+     * @param source the source pixels
+     * @param sourceWidth the width (row stride) of the source
+     * @param columns the column map from the region to the tensor width
+     * @param top the top edge of the region
+     * @param regionHeight the height of the region
+     * @param mean the per-channel (RGB) mean in pixel units
+     * @param inverseStd the reciprocal of the per-channel (RGB) standard deviation in pixel units
+     * @param layout the layout of the tensor
+     * @param tensor the direct buffer holding the tensor
+     * @param floats a float view of the tensor for float tensors, null for integer tensors
+     * @param batchIndex the batch entry to write
+     */
+    public void normalise(final int[] source, final int sourceWidth, final ColumnMap columns, final int top, final int regionHeight,
+                          final float[] mean, final float[] inverseStd, TensorLayout layout, final ByteBuffer tensor,
+                          final FloatBuffer floats, int batchIndex) {
+        final int width = layout.getWidth();
+        final int height = layout.getHeight();
+
+        // element strides of a column, a row and a channel within one batch entry
+        boolean nhwc = layout.getOrder() == TensorLayout.Order.NHWC;
+        final int pixelStride = nhwc ? 3 : 1;
+        final int rowStride = width * pixelStride;
+        final int channelStride = nhwc ? 1 : width * height;
+        final int base = batchIndex * layout.getElementsPerItem();
+
+        final float inverseScale = 1.0f / layout.getScale();
+        final int zeroPoint = layout.getZeroPoint();
+        final int min = layout.getDataType() == TensorLayout.DataType.INT8 ? -128 : 0;
+        final int max = layout.getDataType() == TensorLayout.DataType.INT8 ? 127 : 255;
+
+        forEachStripe(height, width, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                float sourceY = sourceRow(y, height, regionHeight, columns.bilinear);
+                int row0 = (top + (int) sourceY) * sourceWidth;
+                int row1 = (top + Math.min((int) sourceY + 1, regionHeight - 1)) * sourceWidth;
+                float yWeight = sourceY - (int) sourceY;
+
+                for (int x = 0; x < width; x++) {
+                    int index = base + y * rowStride + x * pixelStride;
+                    int pixel = columns.bilinear ? 0 : source[row0 + columns.x0[x]];
+
+                    for (int c = 0; c < 3; c++) {
+                        int shift = 16 - c * 8;
+                        float channel = columns.bilinear ? bilinear(source, row0, row1, columns, x, yWeight, shift)
+                                : (pixel >> shift) & 0xFF;
+                        float value = (channel - mean[c]) * inverseStd[c];
+                        if (floats != null) {
+                            floats.put(index + c * channelStride, value);
+                        } else {
+                            int quantized = Math.round(value * inverseScale) + zeroPoint;
+                            tensor.put(index + c * channelStride, (byte) Math.max(min, Math.min(max, quantized)));
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /***
+     * Method to stop the pool threads of kernels created for a benchmark or test; the shared kernels stay open
+     */
+    public void close() {
+        if (pool != null) pool.shutdown();
+    }
+
+    /***
+     * Method to get the source row of an output row
+     * @param y the output row
+     * @param height the output height
+     * @param regionHeight the height of the sampled region
+     * @param bilinear true for bilinear sampling, where the fraction is the weight of the next row
+     * @return the source row relative to the top of the region
+     */
+    private static float sourceRow(int y, int height, int regionHeight, boolean bilinear) {
+        return bilinear ? Math.max(0.0f, Math.min(regionHeight - 1, (y + 0.5f) * regionHeight / height - 0.5f))
+                : Math.min(regionHeight - 1, (int) ((y + 0.5f) * regionHeight / height));
+    }
+
+    /***
+     * Method to interpolate one channel of an output pixel from its four neighbouring source pixels
+     * @param source the source pixels
+     * @param row0 the offset of the upper source row
+     * @param row1 the offset of the lower source row
+     * @param columns the column map
+     * @param x the output column
+     * @param yWeight the weight of the lower row
+     * @param shift the bit offset of the channel in an ARGB pixel
+     * @return the interpolated channel value
+     */
+    private static float bilinear(int[] source, int row0, int row1, ColumnMap columns, int x, float yWeight, int shift) {
+        int left = columns.x0[x], right = columns.x1[x];
+        float w = columns.xWeight[x];
+        float top = ((source[row0 + left] >> shift) & 0xFF) * (1 - w) + ((source[row0 + right] >> shift) & 0xFF) * w;
+        float bottom = ((source[row1 + left] >> shift) & 0xFF) * (1 - w) + ((source[row1 + right] >> shift) & 0xFF) * w;
+        return top * (1 - yWeight) + bottom * yWeight;
+    }
+
+    /***
+     * Method to clamp a colour value to a byte
+     * @param value the value
+     * @return the value clamped to 0-255
+     */
+    private static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+
+    /***
+     * The source columns (and bilinear weights) of every output column of a resize, computed once on the calling
+     * thread and reused between frames of the same size by its owner
+     */
+    public static class ColumnMap {
+        private int[] x0 = new int[0];
+        private int[] x1 = new int[0];
+        private float[] xWeight = new float[0];
+        private int width;
+        private boolean bilinear;
+
+        /***
+         * Method to map the output columns to a region of the source
+         * @param left the left edge of the region
+         * @param regionWidth the width of the region
+         * @param width the output width
+         * @param bilinear true for bilinear sampling, false for nearest neighbour
+         * @return this column map
+         */
+        public ColumnMap set(int left, int regionWidth, int width, boolean bilinear) {
+            if (x0.length < width) {
+                x0 = new int[width];
+                x1 = new int[width];
+                xWeight = new float[width];
+            }
+            this.width = width;
+            this.bilinear = bilinear;
+
+            for (int x = 0; x < width; x++) {
+                if (bilinear) {
+                    float sourceX = Math.max(0.0f, Math.min(regionWidth - 1, (x + 0.5f) * regionWidth / width - 0.5f));
+                    x0[x] = left + (int) sourceX;
+                    x1[x] = left + Math.min((int) sourceX + 1, regionWidth - 1);
+                    xWeight[x] = sourceX - (int) sourceX;
+                } else {
+                    x0[x] = left + Math.min(regionWidth - 1, (int) ((x + 0.5f) * regionWidth / width));
+                }
+            }
+            return this;
+        }
+    }
+
+    /***
+     * A fork-join task splitting a range of rows in halves until each stripe is small enough to compute
+     */
+    private static class Stripe extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RowKernel kernel;
+        private final int startRow;
+        private final int endRow;
+        private final int stripeRows;
+
+        /***
+         * Constructor to create a stripe task
+         * @param kernel the kernel computing the rows
+         * @param startRow the first row
+         * @param endRow the row after the last row
+         * @param stripeRows the largest number of rows computed without splitting
+         */
+        Stripe(RowKernel kernel, int startRow, int endRow, int stripeRows) {
+            this.kernel = kernel;
+            this.startRow = startRow;
+            this.endRow = endRow;
+            this.stripeRows = stripeRows;
+        }
+
+        /***
+         * Method to compute the stripe, or split it and compute both halves in parallel
+         */
+        @Override
+        protected void compute() {
+            if (endRow - startRow <= stripeRows) {
+                kernel.run(startRow, endRow);
+                return;
+            }
+            int middle = (startRow + endRow) >>> 1;
+            invokeAll(new Stripe(kernel, startRow, middle, stripeRows), new Stripe(kernel, middle, endRow, stripeRows));
+        }
+    }
+}
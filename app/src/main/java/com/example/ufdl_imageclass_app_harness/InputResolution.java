@@ -0,0 +1,83 @@
+package com.example.ufdl_imageclass_app_harness;
+
+/***
+ A class to describe one of the input resolutions a fully convolutional model can be run at
+ */
+
+public class InputResolution {
+    private int width;
+    private int height;
+    private float accuracy;     //top-1 accuracy of the model at this resolution, 0 if unknown
+
+    /***
+     * Default constructor for InputResolution
+     */
+    public InputResolution() {
+        super();
+    }
+
+    /***
+     * Constructor to create an input resolution of the given size
+     * @param width the input width
+     * @param height the input height
+     */
+    public InputResolution(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /***
+     * Method to get the input width
+     * @return the input width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /***
+     * Method to get the input height
+     * @return the input height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /***
+     * Method to get the measured top-1 accuracy of the model at this resolution
+     * @return the accuracy between 0 and 1, or 0 if unknown
+     */
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    /***
+     * Method to check whether two resolutions have the same size
+     * @param o the object to compare
+     * @return true if the object is a resolution of the same size
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof InputResolution)) return false;
+        InputResolution that = (InputResolution) o;
+        return width == that.width && height == that.height;
+    }
+
+    /***
+     * Method to get the hash code of the resolution
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        return 31 * width + height;
+    }
+
+    /***
+     * Describes the resolution
+     * @return the resolution formatted as [width]x[height]
+     */
+    @Override
+    public String toString() {
+        return width + "x" + height;
+    }
+}
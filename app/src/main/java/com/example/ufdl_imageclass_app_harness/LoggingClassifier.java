@@ -0,0 +1,228 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.os.SystemClock;
+
+import java.util.List;
+
+/***
+ * A classifier which passes the top-K predictions of the wrapped classifier on to a PredictionLogger. Labels are
+ * mapped to indices through a preallocated open addressing table, filled with every label the wrapped classifier
+ * can predict when it is created, and the record is filled from scratch arrays, so logging a frame doesn't
+ * allocate. Labels which only turn up in predictions (e.g. from a remote server) are given the next index and
+ * queued with the logger, up to MAX_ADDED_LABELS of them; beyond that they are logged as -1.
+ */
+
+public class LoggingClassifier extends Classifier {
+    private final Classifier classifier;
+    private final PredictionLogger logger;
+    private final int modelId;
+    private static final int MAX_ADDED_LABELS = 256;
+
+    private final LabelTable labelIndices;
+    private final int registeredLabels;
+    private int addedLabels;
+    private final int[] labels = new int[PredictionLogger.MAX_K];
+    private final float[] confidences = new float[PredictionLogger.MAX_K];
+    private int frame;
+
+    /***
+     * Constructor to create a logging classifier
+     * @param classifier the classifier whose predictions are logged
+     * @param logger the prediction logger
+     * @param model the model name the records are logged under
+     */
+    public LoggingClassifier(Classifier classifier, PredictionLogger logger, String model) {
+        super();
+        this.classifier = classifier;
+        this.logger = logger;
+
+        String[] classes = classifier.getPredictedLabels();
+        this.modelId = logger.registerModel(model, classes);
+        this.registeredLabels = classes != null ? classes.length : 0;
+        this.labelIndices = new LabelTable(registeredLabels + MAX_ADDED_LABELS);
+        for (int i = 0; i < registeredLabels; i++) labelIndices.put(classes[i], i);
+    }
+
+    /***
+     * Method to get the classifier whose predictions are logged
+     * @return the wrapped classifier
+     */
+    public Classifier getClassifier() {
+        return classifier;
+    }
+
+    /***
+     * A method to get the top 3 predictions of the wrapped classifier and log them
+     * @param bitmap the bitmap to feed the image classifier
+     * @return A list containing the top 3 predictions
+     */
+    @Override
+    public List<Prediction> topKPredictions(Bitmap bitmap) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        List<Prediction> predictions = classifier.topKPredictions(bitmap);
+        int latencyMicros = (int) ((SystemClock.elapsedRealtimeNanos() - start) / 1000);
+
+        int count = Math.min(predictions.size(), PredictionLogger.MAX_K);
+        for (int i = 0; i < count; i++) {
+            Prediction prediction = predictions.get(i);
+            labels[i] = labelIndex(prediction.getLabel());
+            confidences[i] = prediction.getConfidence();
+        }
+        logger.log(System.currentTimeMillis(), frame++, modelId, latencyMicros, labels, confidences, count);
+        return predictions;
+    }
+
+    /***
+     * Method to get the logged index of a label, queueing the label for the model's sidecar entry the first time
+     * it is seen if the wrapped classifier didn't declare it
+     * @param label the label
+     * @return the label index, or -1 if the label could not be added
+     */
+    private int labelIndex(String label) {
+        int index = labelIndices.get(label);
+        if (index >= 0 || addedLabels >= MAX_ADDED_LABELS) return index;
+
+        index = registeredLabels + addedLabels;
+        // a full queue is retried on the label's next frame
+        if (!logger.addLabel(modelId, index, label)) return -1;
+        labelIndices.put(label, index);
+        addedLabels++;
+        return index;
+    }
+
+    /***
+     * Method to get a single prediction for a bitmap, which is logged like the top K predictions
+     * @param bitmap the bitmap to feed to the image classifier
+     * @return the top prediction or null if the wrapped classifier returned no predictions
+     */
+    @Override
+    public Prediction predict(Bitmap bitmap) {
+        List<Prediction> predictions = topKPredictions(bitmap);
+        return predictions.isEmpty() ? null : predictions.get(0);
+    }
+
+    /***
+     * Method to classify several crops of a bitmap with the wrapped classifier
+     * @param bitmap the bitmap to feed to the image classifier
+     * @param crops the regions of the bitmap to classify
+     * @return the normalised scores of every class for each crop
+     */
+    @Override
+    public float[][] batchScores(Bitmap bitmap, Rect[] crops) {
+        return classifier.batchScores(bitmap, crops);
+    }
+
+    /***
+     * Method to get the set of classes of the wrapped classifier
+     * @return String array of classes (image labels)
+     */
+    @Override
+    public String[] getClasses() {
+        return classifier.getClasses();
+    }
+
+    /***
+     * Method to get the class probabilities of the wrapped classifier
+     * @param bitmap the bitmap to feed to the image classifier
+     * @return the probabilities aligned with getClasses()
+     */
+    @Override
+    public float[] classProbabilities(Bitmap bitmap) {
+        return classifier.classProbabilities(bitmap);
+    }
+
+    /***
+     * Method to get the label subset of the wrapped classifier
+     * @return the ascending class indices, or null if every class is predicted
+     */
+    @Override
+    public int[] getLabelSubset() {
+        return classifier.getLabelSubset();
+    }
+
+    /***
+     * Method to get the input size of the wrapped classifier
+     * @return the largest input side in pixels
+     */
+    @Override
+    public int getInputSize() {
+        return classifier.getInputSize();
+    }
+
+    /***
+     * Method to get the statistics of the wrapped classifier and the logger
+     * @return the formatted statistics
+     */
+    @Override
+    public String getStatistics() {
+        String statistics = classifier.getStatistics();
+        return statistics != null ? statistics + "\n" + logger.getStatistics() : logger.getStatistics();
+    }
+
+    /***
+     * Method to release the wrapped classifier. The logger is shared and closed by its owner.
+     */
+    @Override
+    public void close() {
+        classifier.close();
+    }
+
+    /***
+     * A fixed capacity map from labels to indices with linear probing, which doesn't allocate once created
+     */
+    private static class LabelTable {
+        private final String[] keys;
+        private final int[] values;
+        private final int mask;
+
+        /***
+         * Constructor to create a label table
+         * @param maxLabels the number of labels it must hold, which it keeps at most half full
+         */
+        LabelTable(int maxLabels) {
+            int capacity = Integer.highestOneBit(Math.max(2 * maxLabels - 1, 1)) << 1;
+            keys = new String[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        /***
+         * Method to look up the index of a label
+         * @param label the label
+         * @return the index or -1 if the label isn't in the table
+         */
+        int get(String label) {
+            for (int slot = slot(label); keys[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot].equals(label)) return values[slot];
+            }
+            return -1;
+        }
+
+        /***
+         * Method to add a label, keeping the first index of a label which is added twice
+         * @param label the label
+         * @param index the index of the label
+         */
+        void put(String label, int index) {
+            int slot = slot(label);
+            while (keys[slot] != null) {
+                if (keys[slot].equals(label)) return;
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = label;
+            values[slot] = index;
+        }
+
+        /***
+         * Method to get the first slot to probe for a label
+         * @param label the label
+         * @return the slot
+         */
+        private int slot(String label) {
+            int hash = label.hashCode();
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+}
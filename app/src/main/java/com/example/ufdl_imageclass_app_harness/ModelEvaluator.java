@@ -0,0 +1,434 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/***
+ * A class to measure the accuracy and performance of models over a labelled image folder, where each
+ * sub-folder is named after a class. Every model is run through the same Classifier API with the execution plan
+ * the Autotuner found for this device, at a fixed input resolution, and images are
+ * decoded one at a time at a bounded size so memory use doesn't grow with the dataset. With a PredictionCache,
+ * images a model has classified before (e.g. when a report is run again) are neither decoded nor classified.
+ */
+
+public class ModelEvaluator {
+    private static final String[] IMAGE_EXTENSIONS = {".jpg", ".jpeg", ".png", ".webp", ".bmp"};
+
+    private final Context context;
+    private final File dataset;
+    private final PredictionCache cache;
+    private final ProgressListener listener;
+    private Autotuner autotuner;
+
+    /***
+     * A listener notified as the evaluation progresses
+     */
+    public interface ProgressListener {
+        /***
+         * Called with a human readable progress message
+         * @param message the progress message
+         */
+        void onProgress(String message);
+    }
+
+    /***
+     * Constructor to create a model evaluator
+     * @param context the context
+     * @param dataset the root folder of the labelled images
+     * @param cache the cache of earlier predictions, or null to classify every image
+     * @param listener the progress listener
+     */
+    public ModelEvaluator(Context context, File dataset, PredictionCache cache, ProgressListener listener) {
+        this.context = context;
+        this.dataset = dataset;
+        this.cache = cache;
+        this.listener = listener;
+    }
+
+    /***
+     * Method to list the models in the assets folder which can be evaluated
+     * @return the names of the PyTorch and TensorFlow Lite models
+     * @throws IOException if the assets folder cannot be listed
+     */
+    public List<String> findModels() throws IOException {
+        List<String> models = new ArrayList<>();
+        for (String assetName : context.getAssets().list("")) {
+            if (ClassifierUtils.isPyTorchModel(assetName) || assetName.endsWith(".tflite")) models.add(assetName);
+        }
+        return models;
+    }
+
+    /***
+     * Method to evaluate each of the given models over the dataset
+     * @param models the model names
+     * @return the evaluation report
+     */
+    public EvaluationReport evaluate(List<String> models) {
+        EvaluationReport report = new EvaluationReport();
+        report.dataset = dataset.getAbsolutePath();
+        report.device = describeDevice();
+        report.timestamp = System.currentTimeMillis();
+
+        List<File> images = listImages();
+        for (String model : models) {
+            listener.onProgress("Evaluating " + model + " on " + images.size() + " images");
+            report.models.add(evaluate(model, images));
+        }
+        return report;
+    }
+
+    /***
+     * Method to describe the device the models are evaluated on
+     * @return the manufacturer, model and API level
+     */
+    String describeDevice() {
+        return Build.MANUFACTURER + " " + Build.MODEL + " (API " + Build.VERSION.SDK_INT + ")";
+    }
+
+    /***
+     * Method to list the images of every class folder in a stable order
+     * @return the image files
+     */
+    private List<File> listImages() {
+        List<File> images = new ArrayList<>();
+        File[] classFolders = dataset.listFiles(File::isDirectory);
+        if (classFolders == null) return images;
+        Arrays.sort(classFolders);
+
+        for (File classFolder : classFolders) {
+            File[] files = classFolder.listFiles(ModelEvaluator::isImage);
+            if (files == null) continue;
+            Arrays.sort(files);
+            images.addAll(Arrays.asList(files));
+        }
+        return images;
+    }
+
+    /***
+     * Method to check whether a file is an image based on its extension
+     * @param file the file
+     * @return true if the file is an image
+     */
+    private static boolean isImage(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        for (String extension : IMAGE_EXTENSIONS) {
+            if (name.endsWith(extension)) return true;
+        }
+        return false;
+    }
+
+    /***
+     * Method to evaluate a single model over the images
+     * @param model the model name
+     * @param images the image files
+     * @return the model's results
+     */
+    private EvaluationReport.ModelResult evaluate(String model, List<File> images) {
+        EvaluationReport.ModelResult result = new EvaluationReport.ModelResult();
+        result.model = model;
+        result.framework = framework(model);
+
+        ClassifierDetails details = loadDetails(model);
+        if (details == null) {
+            result.error = "Missing model JSON";
+            return result;
+        }
+
+        Set<String> classes = new HashSet<>();
+        for (String label : details.getClasses()) {
+            classes.add(ClassifierUtils.normaliseLabel(label));
+        }
+
+        System.gc();
+        long nativeHeapBefore = nativeHeapBytes();
+        long residentBefore = residentSetBytes();
+        long loadStart = SystemClock.elapsedRealtimeNanos();
+        ImageClassification classification = load(model, details, result);
+        result.loadMs = (SystemClock.elapsedRealtimeNanos() - loadStart) / 1e6f;
+        result.loadNativeHeapBytes = nativeHeapBytes() - nativeHeapBefore;
+        result.loadResidentBytes = residentSetBytes() - residentBefore;
+        if (classification == null) {
+            result.error = "Model failed to load";
+            return result;
+        }
+
+        long[] latencies = new long[images.size()];
+        int inferred = 0;
+        int top1Correct = 0;
+        int topKCorrect = 0;
+        boolean warmedUp = false;
+        long wallStart = SystemClock.elapsedRealtimeNanos();
+        long inferenceNanos = 0;
+
+        for (File image : images) {
+            String label = ClassifierUtils.normaliseLabel(image.getParentFile().getName());
+            if (!classes.contains(label)) {
+                result.unmatchedImages++;
+                continue;
+            }
+
+            byte[] encoded = read(image);
+            if (encoded == null) continue;
+
+            // the first inference also initialises the runtime, so it is run once more and left out of the timings
+            if (!warmedUp) warmedUp = classification.warmUp(encoded);
+
+            List<Prediction> predictions = classification.classify(encoded);
+            if (predictions == null) continue;
+
+            long latency = classification.getInferenceNanos();
+            if (latency < 0) {
+                result.cachedImages++;
+            } else {
+                latencies[inferred++] = latency;
+                inferenceNanos += latency;
+            }
+            result.images++;
+            result.topK = Math.max(result.topK, predictions.size());
+
+            for (int i = 0; i < predictions.size(); i++) {
+                if (ClassifierUtils.normaliseLabel(predictions.get(i).getLabel()).equals(label)) {
+                    if (i == 0) top1Correct++;
+                    topKCorrect++;
+                    break;
+                }
+            }
+
+            Runtime runtime = Runtime.getRuntime();
+            result.peakJavaHeapBytes = Math.max(result.peakJavaHeapBytes, runtime.totalMemory() - runtime.freeMemory());
+            result.peakNativeHeapBytes = Math.max(result.peakNativeHeapBytes, nativeHeapBytes());
+
+            if (result.images % 50 == 0) listener.onProgress(model + ": " + result.images + " images");
+        }
+        long wallNanos = SystemClock.elapsedRealtimeNanos() - wallStart;
+        classification.close();
+
+        if (result.images > 0) {
+            result.top1Accuracy = (float) top1Correct / result.images;
+            result.topKAccuracy = (float) topKCorrect / result.images;
+            result.endToEndThroughput = result.images / (wallNanos / 1e9f);
+        }
+        // cached images weren't classified, so the latencies only cover the others
+        if (inferred > 0) {
+            long[] sorted = Arrays.copyOf(latencies, inferred);
+            Arrays.sort(sorted);
+            result.meanLatencyMs = inferenceNanos / 1e6f / inferred;
+            result.p50LatencyMs = percentile(sorted, 50);
+            result.p90LatencyMs = percentile(sorted, 90);
+            result.p99LatencyMs = percentile(sorted, 99);
+            result.maxLatencyMs = sorted[sorted.length - 1] / 1e6f;
+            result.inferenceThroughput = inferred / (inferenceNanos / 1e9f);
+        }
+        return result;
+    }
+
+    /***
+     * Method to get the framework a model file runs on
+     * @param model the model file name
+     * @return the framework name
+     */
+    private static String framework(String model) {
+        if (model.endsWith(".ptl")) return "PyTorch Mobile (lite interpreter)";
+        return model.endsWith(".pt") ? "PyTorch Mobile" : "TensorFlow Lite";
+    }
+
+    /***
+     * Method to read the model JSON of a model
+     * @param model the model name
+     * @return the classifier details or null if the model has no JSON
+     */
+    ClassifierDetails loadDetails(String model) {
+        return ClassifierUtils.deserializeModelJSON(context, model);
+    }
+
+    /***
+     * Method to load a model the way this device runs it: with its tuned execution plan, which may run an
+     * alternative file of the same network, or with the defaults if it hasn't been tuned. The input resolution is
+     * pinned (to the model's native resolution if the plan lets it adapt), so the accuracy and latency aren't
+     * those of whichever resolution the ResolutionScaler happens to pick.
+     * @param model the model name
+     * @param details the details of the model
+     * @param result the model's results, which record the plan
+     * @return the classification of the images by the model, or null if it failed to load
+     */
+    ImageClassification load(String model, ClassifierDetails details, EvaluationReport.ModelResult result) {
+        if (autotuner == null) autotuner = new Autotuner(context);
+        ExecutionPlan plan = autotuner.getPlan(details);
+        ClassifierDetails planDetails = plan != null && !plan.getModel().equals(model)
+                ? ClassifierUtils.deserializeModelJSON(context, plan.getModel()) : details;
+        if (plan == null || planDetails == null) {
+            planDetails = details;
+            plan = ExecutionPlan.atNativeResolution(details, 0, true);
+        } else if (plan.getResolution() == null) {
+            plan = ExecutionPlan.atNativeResolution(planDetails, plan.getNumThreads(), plan.getUseXnnpack());
+        }
+        result.plan = plan.toString();
+        result.framework = framework(planDetails.getName());
+
+        Classifier classifier = Classifier.createInstance(context, planDetails, plan);
+        if (classifier == null) return null;
+        return new ImageClassification(classifier, withCache(classifier, planDetails, plan, model));
+    }
+
+    /***
+     * Method to look up a model's predictions in the prediction cache, if the evaluation has one
+     * @param classifier the classifier of the model
+     * @param planDetails the details of the model file which is run
+     * @param plan the execution plan
+     * @param model the model name
+     * @return the caching classifier, or null to classify every image
+     */
+    private CachingClassifier withCache(Classifier classifier, ClassifierDetails planDetails, ExecutionPlan plan, String model) {
+        if (cache == null) return null;
+
+        try {
+            // the plan's input resolution changes the predictions, so cached entries are kept per resolution
+            long identity = ClassifierUtils.configurationIdentity(context, planDetails.getName(), model);
+            identity = ContentHash.update(identity, plan.getResolution().toString());
+            return new CachingClassifier(classifier, cache, identity);
+        } catch (IOException e) {
+            Log.e("TAG", "Error: Cannot identify " + model + " for the prediction cache: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /***
+     * Method to get the size of the native heap, where the engines keep their tensors
+     * @return the allocated native heap in bytes
+     */
+    long nativeHeapBytes() {
+        return Debug.getNativeHeapAllocatedSize();
+    }
+
+    /***
+     * Method to get the resident set size of the process, which unlike the heap sizes includes memory mapped
+     * model files and the code of the runtime libraries
+     * @return the resident memory in bytes, or 0 if it cannot be read
+     */
+    long residentSetBytes() {
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/statm"))) {
+            String[] pages = reader.readLine().trim().split("\\s+");
+            return Long.parseLong(pages[1]) * Os.sysconf(OsConstants._SC_PAGESIZE);
+        } catch (IOException | RuntimeException e) {
+            return 0;
+        }
+    }
+
+    /***
+     * Method to read an image file into memory, still encoded
+     * @param file the image file
+     * @return the encoded image or null if the file could not be read
+     */
+    private static byte[] read(File file) {
+        byte[] encoded = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(encoded);
+            return encoded;
+        } catch (IOException e) {
+            Log.e("TAG", "Error: Cannot read " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /***
+     * Method to get a nearest-rank percentile of sorted latencies
+     * @param sorted the latencies in nanoseconds in ascending order
+     * @param percentile the percentile between 0 and 100
+     * @return the percentile latency in milliseconds
+     */
+    private static float percentile(long[] sorted, int percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6f;
+    }
+
+    /***
+     * The classification of the encoded images of the dataset by a model, through the prediction cache if the
+     * evaluation has one. Only the inference is timed, not decoding. Tests override it with a stub model, so
+     * the evaluation runs without a device.
+     */
+    static class ImageClassification {
+        private final Classifier classifier;
+        private final CachingClassifier cachingClassifier;
+        private long inferenceNanos;
+
+        /***
+         * Constructor to create the classification of a model
+         * @param classifier the classifier of the model
+         * @param cachingClassifier the classifier looking up the prediction cache first, or null
+         */
+        ImageClassification(Classifier classifier, CachingClassifier cachingClassifier) {
+            this.classifier = classifier;
+            this.cachingClassifier = cachingClassifier;
+        }
+
+        /***
+         * Method to run the model on an image without caching or timing it
+         * @param encoded the encoded image
+         * @return true if the image could be decoded and classified
+         */
+        boolean warmUp(byte[] encoded) {
+            Bitmap bitmap = ClassifierUtils.decodeImage(encoded);
+            if (bitmap == null) return false;
+
+            classifier.topKPredictions(bitmap);
+            bitmap.recycle();
+            return true;
+        }
+
+        /***
+         * Method to classify an image
+         * @param encoded the encoded image
+         * @return the top predictions or null if the image could not be decoded
+         */
+        List<Prediction> classify(byte[] encoded) {
+            if (cachingClassifier != null) {
+                List<Prediction> predictions = cachingClassifier.topKPredictions(encoded);
+                inferenceNanos = cachingClassifier.getLastInferenceNanos();
+                return predictions;
+            }
+
+            Bitmap bitmap = ClassifierUtils.decodeImage(encoded);
+            if (bitmap == null) return null;
+
+            long start = SystemClock.elapsedRealtimeNanos();
+            List<Prediction> predictions = classifier.topKPredictions(bitmap);
+            inferenceNanos = SystemClock.elapsedRealtimeNanos() - start;
+            bitmap.recycle();
+            return predictions;
+        }
+
+        /***
+         * Method to get the inference time of the latest image
+         * @return the inference time in nanoseconds, or -1 if the predictions came from the cache
+         */
+        long getInferenceNanos() {
+            return inferenceNanos;
+        }
+
+        /***
+         * Method to release the model
+         */
+        void close() {
+            classifier.close();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * A classifier which cuts each frame into a grid or set of regions of interest and classifies all of the
+ * crops in one batched call, so objects away from the center of the frame are not lost. Per-crop scores
+ * are merged by taking the maximum or the mean of each class.
+ */
+
+public class MultiCropClassifier extends Classifier {
+    private final Classifier classifier;
+    private final String[] classes;
+    private final RectF[] regions;
+    private final boolean mergeByMean;
+
+    //crops in pixels, recomputed when the frame size changes
+    private Rect[] crops;
+    private int cropsWidth;
+    private int cropsHeight;
+
+    //the score of the top merged class in each crop, used to draw the heatmap
+    private final float[] heat;
+
+    /***
+     * Constructor to create a multi-crop classifier
+     * @param context the context
+     * @param details the multi-crop details naming the model and the crop layout
+     * @throws IOException if the model could not be created
+     */
+    public MultiCropClassifier(Context context, MultiCropDetails details) throws IOException {
+        super();
+        this.classifier = createMember(context, details.getModel());
+        this.classes = classifier.getClasses();
+        this.regions = createRegions(details);
+        this.mergeByMean = "mean".equals(details.getMerge());
+        this.heat = new float[regions.length];
+    }
+
+    /***
+     * Method to create the crop regions as fractions of the frame size
+     * @param details the multi-crop details
+     * @return the crop regions
+     */
+    private static RectF[] createRegions(MultiCropDetails details) {
+        List<RectF> regions = new ArrayList<>();
+
+        if (details.getRegions() != null && !details.getRegions().isEmpty()) {
+            for (float[] region : details.getRegions()) {
+                regions.add(new RectF(region[0], region[1], region[2], region[3]));
+            }
+        } else {
+            float cellWidth = 1.0f / details.getCols();
+            float cellHeight = 1.0f / details.getRows();
+            float padX = cellWidth * details.getOverlap() / 2;
+            float padY = cellHeight * details.getOverlap() / 2;
+
+            for (int row = 0; row < details.getRows(); row++) {
+                for (int col = 0; col < details.getCols(); col++) {
+                    regions.add(new RectF(
+                            Math.max(0.0f, col * cellWidth - padX),
+                            Math.max(0.0f, row * cellHeight - padY),
+                            Math.min(1.0f, (col + 1) * cellWidth + padX),
+                            Math.min(1.0f, (row + 1) * cellHeight + padY)));
+                }
+            }
+        }
+
+        return regions.toArray(new RectF[0]);
+    }
+
+    /***
+     * Method to get the crops in pixels for a frame of the given size
+     * @param width the frame width
+     * @param height the frame height
+     * @return the crops
+     */
+    private Rect[] getCrops(int width, int height) {
+        if (crops == null || width != cropsWidth || height != cropsHeight) {
+            crops = new Rect[regions.length];
+            for (int i = 0; i < regions.length; i++) {
+                crops[i] = new Rect(Math.round(regions[i].left * width), Math.round(regions[i].top * height),
+                        Math.round(regions[i].right * width), Math.round(regions[i].bottom * height));
+            }
+            cropsWidth = width;
+            cropsHeight = height;
+        }
+        return crops;
+    }
+
+    /***
+     * A method to classify every crop of the bitmap and return the top 3 merged predictions
+     * @param bitmap the bitmap to feed the image classifier
+     * @return A list containing the top 3 merged predictions
+     */
+    @Override
+    public List<Prediction> topKPredictions(Bitmap bitmap) {
+        float[][] scores = classifier.batchScores(bitmap, getCrops(bitmap.getWidth(), bitmap.getHeight()));
+
+        // only the classes of the member's label subset hold scores
+        int[] subset = classifier.getLabelSubset();
+        int count = subset == null ? classes.length : subset.length;
+        float[] merged = new float[classes.length];
+        for (int n = 0; n < count; n++) {
+            int j = subset == null ? n : subset[n];
+            float value = mergeByMean ? 0.0f : -Float.MAX_VALUE;
+            for (float[] cropScores : scores) {
+                value = mergeByMean ? value + cropScores[j] : Math.max(value, cropScores[j]);
+            }
+            merged[j] = mergeByMean ? value / scores.length : value;
+        }
+
+        int[] indices = topK(merged, subset);
+        List<Prediction> predictions = new ArrayList<>(TOP_K);
+        for (int index : indices) {
+            if (index >= 0) predictions.add(new Prediction(classes[index], merged[index]));
+        }
+
+        synchronized (heat) {
+            for (int i = 0; i < scores.length; i++) {
+                heat[i] = indices[0] >= 0 ? scores[i][indices[0]] : 0.0f;
+            }
+        }
+        return predictions;
+    }
+
+    /***
+     * Method to classify the crops of a bitmap and return a single merged prediction
+     * @param bitmap the bitmap to feed to the image classifier
+     * @return the top merged prediction
+     */
+    @Override
+    public Prediction predict(Bitmap bitmap) {
+        return topKPredictions(bitmap).get(0);
+    }
+
+    /***
+     * Method to get the crop regions as fractions of the frame size
+     * @return the crop regions
+     */
+    public RectF[] getRegions() {
+        return regions;
+    }
+
+    /***
+     * Method to get the score of the top predicted class in each crop of the latest frame
+     * @return a copy of the per-crop scores, in the same order as the regions
+     */
+    public float[] getHeat() {
+        synchronized (heat) {
+            return heat.clone();
+        }
+    }
+
+    /***
+     * Method to get the frame size needed for the smallest crop to cover the crop model's input
+     * @return the largest input side in pixels
+     */
+    @Override
+    public int getInputSize() {
+        float smallestSide = 1.0f;
+        for (RectF region : regions) {
+            smallestSide = Math.min(smallestSide, Math.min(region.width(), region.height()));
+        }
+        return smallestSide > 0 ? (int) Math.ceil(classifier.getInputSize() / smallestSide) : classifier.getInputSize();
+    }
+
+    /***
+     * Method to get the crop model's statistics
+     * @return the formatted statistics
+     */
+    @Override
+    public String getStatistics() {
+        String statistics = classifier.getStatistics();
+        return statistics != null ? regions.length + " crops  " + statistics : regions.length + " crops";
+    }
+
+    /***
+     * Method to release the crop model
+     */
+    @Override
+    public void close() {
+        classifier.close();
+    }
+}
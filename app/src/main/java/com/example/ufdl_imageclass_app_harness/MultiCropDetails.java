@@ -0,0 +1,82 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import java.util.List;
+
+/***
+ A class to encapsulate the information required to build a MultiCropClassifier. Multi-crop manifests are
+ stored in the assets folder as "[name].multicrop.json". Crops are either a rows x cols grid over the frame
+ or a list of regions of interest given as [left, top, right, bottom] fractions of the frame size.
+ */
+
+public class MultiCropDetails {
+    private String name;
+    private String model;
+    private int rows = 2;
+    private int cols = 2;
+    private float overlap = 0.0f;
+    private List<float[]> regions;
+    private String merge = "max";
+
+    /***
+     * Default constructor for MultiCropDetails
+     */
+    public MultiCropDetails() {
+        super();
+    }
+
+    /***
+     * Method to get the manifest name
+     * @return the manifest name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /***
+     * Method to get the name of the model classifying the crops
+     * @return the model name
+     */
+    public String getModel() {
+        return model;
+    }
+
+    /***
+     * Method to get the number of grid rows
+     * @return the number of grid rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /***
+     * Method to get the number of grid columns
+     * @return the number of grid columns
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /***
+     * Method to get the fraction of a grid cell by which neighbouring crops overlap
+     * @return the overlap fraction
+     */
+    public float getOverlap() {
+        return overlap;
+    }
+
+    /***
+     * Method to get the regions of interest, which replace the grid when present
+     * @return the regions as [left, top, right, bottom] fractions or null to use the grid
+     */
+    public List<float[]> getRegions() {
+        return regions;
+    }
+
+    /***
+     * Method to get how per-crop scores are merged into the frame's scores
+     * @return "max" or "mean"
+     */
+    public String getMerge() {
+        return merge;
+    }
+}
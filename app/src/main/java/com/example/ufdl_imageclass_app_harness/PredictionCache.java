@@ -0,0 +1,272 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/***
+ * A persistent cache of top-K predictions keyed by an image content hash and a model identity hash.
+ * Entries are appended to a single file and located through an in-memory index, which is rebuilt by
+ * scanning the file when the cache is opened. When the live entries exceed the size budget the least
+ * recently used ones are evicted and the file is compacted.
+ *
+ * Record layout: [int length][long contentHash][long modelHash][byte count]{[UTF label][float confidence]}*count
+ */
+
+public class PredictionCache {
+    private static final int HEADER_BYTES = 4;
+
+    private final File file;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> index = new LinkedHashMap<>(64, 0.75f, true);
+    private RandomAccessFile store;
+    private long liveBytes;
+    private long hits;
+    private long misses;
+
+    /***
+     * Constructor to open (or create) a prediction cache
+     * @param file the cache file
+     * @param maxBytes the maximum number of bytes of live entries to keep
+     * @throws IOException if the cache file cannot be opened
+     */
+    public PredictionCache(File file, long maxBytes) throws IOException {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.store = new RandomAccessFile(file, "rw");
+        loadIndex();
+    }
+
+    /***
+     * Method to rebuild the in-memory index by scanning the cache file. A truncated trailing record,
+     * e.g. from the app being killed mid-write, is cut off.
+     * @throws IOException if the cache file cannot be read
+     */
+    private void loadIndex() throws IOException {
+        long offset = 0;
+        long length = store.length();
+
+        while (offset + HEADER_BYTES + 16 <= length) {
+            store.seek(offset);
+            int recordLength = store.readInt();
+            if (recordLength <= 16 || offset + HEADER_BYTES + recordLength > length) break;
+
+            Key key = new Key(store.readLong(), store.readLong());
+            Entry previous = index.put(key, new Entry(offset, recordLength));
+            if (previous != null) liveBytes -= previous.length;
+            liveBytes += recordLength;
+            offset += HEADER_BYTES + recordLength;
+        }
+
+        if (offset < length) store.setLength(offset);
+    }
+
+    /***
+     * Method to look up the predictions of an image for a model
+     * @param contentHash the image content hash
+     * @param modelHash the model identity hash
+     * @return the cached predictions or null on a miss
+     */
+    public synchronized List<Prediction> get(long contentHash, long modelHash) {
+        Entry entry = index.get(new Key(contentHash, modelHash));
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+
+        try {
+            byte[] record = new byte[entry.length];
+            store.seek(entry.offset + HEADER_BYTES);
+            store.readFully(record);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, 16, record.length - 16));
+            int count = in.readUnsignedByte();
+            List<Prediction> predictions = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                predictions.add(new Prediction(in.readUTF(), in.readFloat()));
+            }
+            hits++;
+            return predictions;
+        } catch (EOFException e) {
+            // a corrupt record is dropped so the entry is recomputed
+            index.remove(new Key(contentHash, modelHash));
+            liveBytes -= entry.length;
+        } catch (IOException e) {
+            Log.e("TAG", "Error: Cannot read prediction cache entry: " + e.getMessage());
+        }
+
+        misses++;
+        return null;
+    }
+
+    /***
+     * Method to append the predictions of an image for a model to the cache
+     * @param contentHash the image content hash
+     * @param modelHash the model identity hash
+     * @param predictions the predictions to store
+     */
+    public synchronized void put(long contentHash, long modelHash, List<Prediction> predictions) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeLong(contentHash);
+            out.writeLong(modelHash);
+            int count = Math.min(predictions.size(), 255);
+            out.writeByte(count);
+            for (int i = 0; i < count; i++) {
+                out.writeUTF(predictions.get(i).getLabel());
+                out.writeFloat(predictions.get(i).getConfidence());
+            }
+
+            byte[] record = bytes.toByteArray();
+            int recordLength = record.length - HEADER_BYTES;
+            record[0] = (byte) (recordLength >>> 24);
+            record[1] = (byte) (recordLength >>> 16);
+            record[2] = (byte) (recordLength >>> 8);
+            record[3] = (byte) recordLength;
+
+            long offset = store.length();
+            store.seek(offset);
+            store.write(record);
+
+            Entry previous = index.put(new Key(contentHash, modelHash), new Entry(offset, recordLength));
+            if (previous != null) liveBytes -= previous.length;
+            liveBytes += recordLength;
+
+            if (liveBytes > maxBytes) evict();
+        } catch (IOException e) {
+            Log.e("TAG", "Error: Cannot write prediction cache entry: " + e.getMessage());
+        }
+    }
+
+    /***
+     * Method to evict the least recently used entries down to three quarters of the budget and compact the file
+     * @throws IOException if the cache file cannot be rewritten
+     */
+    private void evict() throws IOException {
+        Iterator<Map.Entry<Key, Entry>> iterator = index.entrySet().iterator();
+        while (liveBytes > maxBytes * 3 / 4 && iterator.hasNext()) {
+            liveBytes -= iterator.next().getValue().length;
+            iterator.remove();
+        }
+
+        // copy the surviving entries, oldest first so the LRU order survives a reload
+        File compacted = new File(file.getPath() + ".tmp");
+        long[] offsets = new long[index.size()];
+        try (RandomAccessFile out = new RandomAccessFile(compacted, "rw")) {
+            out.setLength(0);
+            int i = 0;
+            for (Entry entry : index.values()) {
+                byte[] record = new byte[HEADER_BYTES + entry.length];
+                store.seek(entry.offset);
+                store.readFully(record);
+                offsets[i++] = out.getFilePointer();
+                out.write(record);
+            }
+        }
+
+        // the store is reopened whether or not the compacted file replaced it, so the cache keeps working on the
+        // old file (whose offsets are still valid) if the rename fails
+        store.close();
+        boolean replaced = compacted.renameTo(file);
+        store = new RandomAccessFile(file, "rw");
+        if (!replaced) {
+            compacted.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+
+        int i = 0;
+        for (Entry entry : index.values()) entry.offset = offsets[i++];
+    }
+
+    /***
+     * Method to get the hit and miss counts for display
+     * @return the formatted statistics
+     */
+    public synchronized String getStatistics() {
+        long lookups = hits + misses;
+        return String.format(Locale.ROOT, "Cache: %d hits  %d misses (%.0f%%)  %d entries",
+                hits, misses, lookups == 0 ? 0.0f : hits * 100.0f / lookups, index.size());
+    }
+
+    /***
+     * Method to get the number of lookups served from the cache
+     * @return the hit count
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /***
+     * Method to get the number of lookups not found in the cache
+     * @return the miss count
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /***
+     * Method to close the cache file
+     */
+    public synchronized void close() {
+        try {
+            store.close();
+        } catch (IOException e) {
+            Log.e("TAG", e.getMessage());
+        }
+    }
+
+    /***
+     * The index key combining the image content hash and the model identity hash
+     */
+    private static class Key {
+        private final long contentHash;
+        private final long modelHash;
+
+        Key(long contentHash, long modelHash) {
+            this.contentHash = contentHash;
+            this.modelHash = modelHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return contentHash == key.contentHash && modelHash == key.modelHash;
+        }
+
+        @Override
+        public int hashCode() {
+            long combined = contentHash * 31 + modelHash;
+            return (int) (combined ^ (combined >>> 32));
+        }
+    }
+
+    /***
+     * The location of a record in the cache file
+     */
+    private static class Entry {
+        private long offset;
+        private final int length;
+
+        Entry(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -12,6 +12,8 @@ import java.util.List;
 public class PredictionListViewModel extends ViewModel {
     private final MutableLiveData<List<Prediction>> _predictionList = new MutableLiveData<>();
     LiveData<List<Prediction>> predictionList = _predictionList;
+    private final MutableLiveData<String> _statistics = new MutableLiveData<>();
+    LiveData<String> statistics = _statistics;
 
     /***
      * Method to update the prediction list data
@@ -20,4 +22,12 @@ public class PredictionListViewModel extends ViewModel {
     public void updateData(List<Prediction> predictions) {
         _predictionList.postValue(predictions);
     }
+
+    /***
+     * Method to update the classifier statistics shown alongside the predictions
+     * @param statistics the formatted statistics or null to hide them
+     */
+    public void updateStatistics(String statistics) {
+        _statistics.postValue(statistics);
+    }
 }
@@ -0,0 +1,187 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/***
+ * An offline tool to convert the binary logs of a PredictionLogger to JSONL or CSV. It only depends on
+ * java.io and Jackson so it can run off-device on logs pulled from the phone, with the app's compiled classes
+ * and the Jackson jars on the classpath:
+ * java -cp app/build/intermediates/javac/debug/classes:jackson-databind-2.11.1.jar:jackson-core-2.11.1.jar:jackson-annotations-2.11.1.jar
+ *     com.example.ufdl_imageclass_app_harness.PredictionLogConverter jsonl|csv [sidecar .models.json] [log .bin files...] > predictions.jsonl
+ */
+
+public class PredictionLogConverter {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final PredictionLogger.Sidecar sidecar;
+    private final boolean csv;
+    private final Writer out;
+
+    /***
+     * Constructor to create a converter
+     * @param sidecar the sidecar resolving model ids and label indices
+     * @param csv true to write CSV or false to write JSONL
+     * @param out the writer to write the converted records to
+     */
+    public PredictionLogConverter(PredictionLogger.Sidecar sidecar, boolean csv, Writer out) {
+        this.sidecar = sidecar;
+        this.csv = csv;
+        this.out = out;
+    }
+
+    /***
+     * Converts the given log files and writes the records to standard output
+     * @param args the output format, the sidecar and the log files
+     * @throws IOException if a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || !(args[0].equals("jsonl") || args[0].equals("csv"))) {
+            System.err.println("Usage: PredictionLogConverter jsonl|csv <sidecar.models.json> <log.bin>...");
+            System.exit(1);
+        }
+
+        PredictionLogger.Sidecar sidecar = new ObjectMapper().readValue(new File(args[1]), PredictionLogger.Sidecar.class);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        PredictionLogConverter converter = new PredictionLogConverter(sidecar, args[0].equals("csv"), out);
+
+        if (converter.csv) converter.writeCsvHeader();
+        for (int i = 2; i < args.length; i++) {
+            converter.convert(new File(args[i]));
+        }
+        out.flush();
+    }
+
+    /***
+     * Method to write the CSV column names
+     * @throws IOException if the output cannot be written
+     */
+    private void writeCsvHeader() throws IOException {
+        StringBuilder header = new StringBuilder("time,frame,model,latency_ms");
+        for (int i = 1; i <= PredictionLogger.MAX_K; i++) {
+            header.append(",label").append(i).append(",confidence").append(i);
+        }
+        out.write(header.append('\n').toString());
+    }
+
+    /***
+     * Method to convert the records of a log file. A truncated trailing record is ignored.
+     * @param file the log file
+     * @throws IOException if the file cannot be read or is not a prediction log
+     */
+    public void convert(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            byte[] magic = new byte[PredictionLogger.MAGIC.length()];
+            in.readFully(magic);
+            if (!PredictionLogger.MAGIC.equals(new String(magic, StandardCharsets.US_ASCII))) {
+                throw new IOException(file + " is not a prediction log");
+            }
+            int recordBytes = in.readInt();
+            int maxK = in.readInt();
+            if (recordBytes != 24 + maxK * 8) throw new IOException(file + " has an unsupported record size");
+
+            int[] labels = new int[maxK];
+            float[] confidences = new float[maxK];
+            while (true) {
+                long time;
+                int frame, modelId, latencyMicros, count;
+                try {
+                    time = in.readLong();
+                    frame = in.readInt();
+                    modelId = in.readInt();
+                    latencyMicros = in.readInt();
+                    count = in.readInt();
+                    for (int i = 0; i < maxK; i++) {
+                        labels[i] = in.readInt();
+                        confidences[i] = in.readFloat();
+                    }
+                } catch (EOFException e) {
+                    return;
+                }
+                write(time, frame, modelId, latencyMicros, labels, confidences, count);
+            }
+        }
+    }
+
+    /***
+     * Method to write a single record
+     * @param time the wall clock time of the frame
+     * @param frame the frame number
+     * @param modelId the model id
+     * @param latencyMicros the time taken to classify the frame
+     * @param labels the label indices
+     * @param confidences the confidences
+     * @param count the number of predictions
+     * @throws IOException if the output cannot be written
+     */
+    private void write(long time, int frame, int modelId, int latencyMicros, int[] labels, float[] confidences, int count) throws IOException {
+        PredictionLogger.ModelEntry model = modelId >= 0 && modelId < sidecar.models.size() ? sidecar.models.get(modelId) : null;
+        String modelName = model != null ? model.name : String.valueOf(modelId);
+        float latencyMs = latencyMicros / 1000.0f;
+
+        if (csv) {
+            StringBuilder line = new StringBuilder();
+            line.append(time).append(',').append(frame).append(',').append(csvField(modelName)).append(',')
+                    .append(String.format(Locale.ROOT, "%.3f", latencyMs));
+            for (int i = 0; i < labels.length; i++) {
+                line.append(',');
+                if (i < count) line.append(csvField(label(model, labels[i])));
+                line.append(',');
+                if (i < count) line.append(confidences[i]);
+            }
+            out.write(line.append('\n').toString());
+        } else {
+            List<Map<String, Object>> predictions = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Map<String, Object> prediction = new LinkedHashMap<>();
+                prediction.put("label", label(model, labels[i]));
+                prediction.put("confidence", confidences[i]);
+                predictions.add(prediction);
+            }
+
+            Map<String, Object> record = new LinkedHashMap<>();
+            record.put("time", time);
+            record.put("frame", frame);
+            record.put("model", modelName);
+            record.put("latencyMs", latencyMs);
+            record.put("predictions", predictions);
+            out.write(mapper.writeValueAsString(record));
+            out.write('\n');
+        }
+    }
+
+    /***
+     * Method to resolve a label index against a model's labels
+     * @param model the model entry or null if the model id is unknown
+     * @param index the label index
+     * @return the label or the index as a string if it cannot be resolved
+     */
+    private static String label(PredictionLogger.ModelEntry model, int index) {
+        String label = model != null && index >= 0 && index < model.labels.size() ? model.labels.get(index) : null;
+        return label != null ? label : String.valueOf(index);
+    }
+
+    /***
+     * Method to quote a CSV field if needed
+     * @param value the field value
+     * @return the escaped field
+     */
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,356 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.util.Log;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/***
+ * A sink which logs every frame's top-K predictions to disk without blocking the frame thread. Records have a
+ * fixed size and are written into a preallocated ring buffer by a single producer (the frame thread) and
+ * drained by a background writer through a FileChannel, so logging a frame doesn't allocate or take a lock.
+ * Log files are rotated once they reach a size limit, and labels are stored as indices into the label lists of
+ * a "models.json" sidecar, which PredictionLogConverter uses to turn the binary logs into JSONL or CSV. Labels
+ * first seen on the frame thread are queued in a second preallocated ring and added to the sidecar by the writer,
+ * so the frame thread never waits for the sidecar to be serialised either.
+ *
+ * File layout: [8 byte MAGIC][int RECORD_BYTES][int MAX_K] followed by records of
+ * [long timeMillis][int frame][int modelId][int latencyMicros][int count]{[int label][float confidence]}*MAX_K
+ */
+
+public class PredictionLogger {
+    public static final String MAGIC = "UFDLPLG1";
+    public static final int MAX_K = 5;
+    public static final int RECORD_BYTES = 24 + MAX_K * 8;
+    public static final int FILE_HEADER_BYTES = 16;
+    public static final String SIDECAR_SUFFIX = ".models.json";
+
+    private static final int WRITE_BUFFER_BYTES = 256 * 1024;
+    private static final int PENDING_LABELS = 256;
+    private static final long DRAIN_PARK_NANOS = 2_000_000;
+    private static final long BLOCK_PARK_NANOS = 50_000;
+
+    /***
+     * What to do with a record when the ring buffer is full
+     */
+    public enum OverflowPolicy {
+        DROP,   //discard the record and count it, the frame thread never waits
+        BLOCK   //wait for the writer to free a slot, no record is lost
+    }
+
+    private final File directory;
+    private final String baseName;
+    private final long maxFileBytes;
+    private final OverflowPolicy overflowPolicy;
+
+    private final ByteBuffer ring;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+    private final Thread writer;
+    private volatile boolean closing;
+    private FileChannel channel;
+    private long fileBytes;
+    private int fileIndex;
+
+    private final Sidecar sidecar = new Sidecar();
+    private final ObjectMapper sidecarMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final Object sidecarFileLock = new Object();
+    private final AtomicReferenceArray<String> pendingLabels = new AtomicReferenceArray<>(PENDING_LABELS);
+    private final int[] pendingModels = new int[PENDING_LABELS];
+    private final int[] pendingIndices = new int[PENDING_LABELS];
+    private final AtomicLong pendingHead = new AtomicLong();
+    private final AtomicLong pendingTail = new AtomicLong();
+
+    /***
+     * Constructor to create a prediction logger and start its writer thread
+     * @param directory the folder to write the logs to
+     * @param baseName the name the log files and the sidecar are prefixed with
+     * @param capacity the number of records the ring buffer holds, rounded up to a power of two
+     * @param maxFileBytes the size after which a log file is rotated
+     * @param overflowPolicy what to do when the ring buffer is full
+     * @throws IOException if the first log file cannot be created
+     */
+    public PredictionLogger(File directory, String baseName, int capacity, long maxFileBytes, OverflowPolicy overflowPolicy) throws IOException {
+        this.directory = directory;
+        this.baseName = baseName;
+        this.maxFileBytes = maxFileBytes;
+        this.overflowPolicy = overflowPolicy;
+        this.capacity = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.ring = ByteBuffer.allocateDirect(this.capacity * RECORD_BYTES);
+
+        openNextFile();
+        writeSidecar();
+
+        writer = new Thread(this::drain, "prediction-logger");
+        writer.setPriority(Thread.MIN_PRIORITY);
+        writer.start();
+    }
+
+    /***
+     * Method to register a model so its records can be resolved to a name and labels
+     * @param name the model name
+     * @param labels the labels the model's label indices refer to, or null if they are added as they are seen
+     * @return the model id to log the model's records with
+     */
+    public int registerModel(String name, String[] labels) {
+        ModelEntry entry = new ModelEntry();
+        entry.name = name;
+        if (labels != null) {
+            for (String label : labels) entry.labels.add(label);
+        }
+        synchronized (this) {
+            entry.id = sidecar.models.size();
+            sidecar.models.add(entry);
+        }
+        writeSidecar();
+        return entry.id;
+    }
+
+    /***
+     * Method to add a label which wasn't known when the model was registered. It is called from the frame thread,
+     * so it only queues the label without allocating or locking, and the writer thread adds it to the sidecar on
+     * its next pass.
+     * @param modelId the model id
+     * @param index the index the label is logged with, chosen by the caller after the model's registered labels
+     * @param label the label
+     * @return true if the label was queued or false if the queue is full and it should be added again later
+     */
+    public boolean addLabel(int modelId, int index, String label) {
+        long sequence;
+        do {
+            sequence = pendingHead.get();
+            if (sequence - pendingTail.get() >= PENDING_LABELS) return false;
+        } while (!pendingHead.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) (sequence % PENDING_LABELS);
+        pendingModels[slot] = modelId;
+        pendingIndices[slot] = index;
+        // publishes the slot to the writer, which reads the label with a volatile get
+        pendingLabels.lazySet(slot, label);
+        return true;
+    }
+
+    /***
+     * Method run by the writer to move the queued labels into the sidecar
+     * @return true if any label was added
+     */
+    private boolean addPendingLabels() {
+        long sequence = pendingTail.get();
+        boolean added = false;
+        while (true) {
+            int slot = (int) (sequence % PENDING_LABELS);
+            String label = pendingLabels.get(slot);
+            if (label == null) break;
+
+            synchronized (this) {
+                List<String> labels = sidecar.models.get(pendingModels[slot]).labels;
+                while (labels.size() <= pendingIndices[slot]) labels.add(null);
+                labels.set(pendingIndices[slot], label);
+            }
+            pendingLabels.set(slot, null);
+            pendingTail.lazySet(++sequence);
+            added = true;
+        }
+        return added;
+    }
+
+    /***
+     * Method to log the predictions of a frame. It must only be called from one thread at a time.
+     * @param timeMillis the wall clock time of the frame
+     * @param frame the frame number
+     * @param modelId the id returned by registerModel
+     * @param latencyMicros the time taken to classify the frame
+     * @param labels the label indices of the predictions
+     * @param confidences the confidences of the predictions
+     * @param count the number of predictions, of which at most MAX_K are kept
+     * @return true if the record was queued or false if it was dropped
+     */
+    public boolean log(long timeMillis, int frame, int modelId, int latencyMicros, int[] labels, float[] confidences, int count) {
+        long sequence = head.get();
+        while (sequence - tail.get() >= capacity) {
+            if (overflowPolicy == OverflowPolicy.DROP || closing) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+        }
+
+        count = Math.min(count, MAX_K);
+        int offset = (int) (sequence & mask) * RECORD_BYTES;
+        ring.putLong(offset, timeMillis);
+        ring.putInt(offset + 8, frame);
+        ring.putInt(offset + 12, modelId);
+        ring.putInt(offset + 16, latencyMicros);
+        ring.putInt(offset + 20, count);
+        for (int i = 0; i < MAX_K; i++) {
+            ring.putInt(offset + 24 + i * 8, i < count ? labels[i] : -1);
+            ring.putFloat(offset + 28 + i * 8, i < count ? confidences[i] : 0.0f);
+        }
+
+        // publishes the record to the writer, which reads head with a volatile get
+        head.lazySet(sequence + 1);
+        return true;
+    }
+
+    /***
+     * The writer loop, which copies contiguous runs of records from the ring buffer into the write buffer and
+     * writes them out whenever the write buffer fills up or the ring buffer runs empty
+     */
+    private void drain() {
+        ByteBuffer view = ring.duplicate();
+        long consumed = tail.get();
+
+        while (true) {
+            if (addPendingLabels()) writeSidecar();
+
+            long available = head.get() - consumed;
+            if (available == 0) {
+                if (writeBuffer.position() > 0) flush();
+                if (closing && head.get() == consumed) {
+                    if (addPendingLabels()) writeSidecar();
+                    break;
+                }
+                LockSupport.parkNanos(DRAIN_PARK_NANOS);
+                continue;
+            }
+
+            int index = (int) (consumed & mask);
+            int count = (int) Math.min(available, capacity - index);
+            count = Math.min(count, writeBuffer.remaining() / RECORD_BYTES);
+            if (count == 0) {
+                flush();
+                continue;
+            }
+
+            view.clear();
+            view.position(index * RECORD_BYTES);
+            view.limit((index + count) * RECORD_BYTES);
+            writeBuffer.put(view);
+            consumed += count;
+            tail.lazySet(consumed);
+        }
+    }
+
+    /***
+     * Method to write out the write buffer, rotating the log file first if it would exceed its size limit.
+     * Records are dropped if they cannot be written, so a full disk doesn't stall the frame thread.
+     */
+    private void flush() {
+        writeBuffer.flip();
+        try {
+            if (fileBytes > FILE_HEADER_BYTES && fileBytes + writeBuffer.remaining() > maxFileBytes) {
+                openNextFile();
+            }
+            while (writeBuffer.hasRemaining()) {
+                fileBytes += channel.write(writeBuffer);
+            }
+        } catch (IOException e) {
+            Log.e("TAG", "Error: Cannot write prediction log: " + e.getMessage());
+        }
+        writeBuffer.clear();
+    }
+
+    /***
+     * Method to close the current log file and start the next one with a file header
+     * @throws IOException if the log file cannot be created
+     */
+    private void openNextFile() throws IOException {
+        if (channel != null) channel.close();
+
+        File file = new File(directory, String.format(Locale.ROOT, "%s-%04d.bin", baseName, fileIndex++));
+        channel = new FileOutputStream(file).getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        header.put(MAGIC.getBytes(StandardCharsets.US_ASCII));
+        header.putInt(RECORD_BYTES);
+        header.putInt(MAX_K);
+        header.flip();
+        while (header.hasRemaining()) channel.write(header);
+        fileBytes = FILE_HEADER_BYTES;
+    }
+
+    /***
+     * Method to rewrite the sidecar with the registered models and their labels. The models are only locked
+     * while they are serialised, so registering a model never waits for the file to be written.
+     */
+    private void writeSidecar() {
+        synchronized (sidecarFileLock) {
+            try (FileOutputStream out = new FileOutputStream(new File(directory, baseName + SIDECAR_SUFFIX))) {
+                byte[] json;
+                synchronized (this) {
+                    json = sidecarMapper.writeValueAsBytes(sidecar);
+                }
+                out.write(json);
+            } catch (IOException e) {
+                Log.e("TAG", "Error: Cannot write prediction log sidecar: " + e.getMessage());
+            }
+        }
+    }
+
+    /***
+     * Method to get the number of queued, written and dropped records for display
+     * @return the formatted statistics
+     */
+    public String getStatistics() {
+        long written = tail.get();
+        return String.format(Locale.ROOT, "Log: %d written  %d queued  %d dropped",
+                written, head.get() - written, dropped.get());
+    }
+
+    /***
+     * Method to write out the queued records, stop the writer and close the log file
+     */
+    public void close() {
+        closing = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.e("TAG", e.getMessage());
+        }
+    }
+
+    /***
+     * The content of the sidecar, resolving model ids and label indices
+     */
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    public static class Sidecar {
+        List<ModelEntry> models = new ArrayList<>();
+    }
+
+    /***
+     * A model registered with the logger
+     */
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    public static class ModelEntry {
+        int id;
+        String name;
+        List<String> labels = new ArrayList<>();
+    }
+}
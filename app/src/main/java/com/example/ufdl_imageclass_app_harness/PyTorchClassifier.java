@@ -2,22 +2,55 @@ package com.example.ufdl_imageclass_app_harness;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
 
 import org.pytorch.IValue;
+import org.pytorch.LiteModuleLoader;
 import org.pytorch.Module;
+import org.pytorch.PyTorchAndroid;
 import org.pytorch.Tensor;
 import org.pytorch.torchvision.TensorImageUtils;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 
 public class PyTorchClassifier extends Classifier {
-    private final int width;
-    private final int height;
+    //the process wide thread count last applied, 0 while PyTorch Mobile still runs with its default
+    private static int numThreads;
+
     private final Module model;
     private final String[] classes;
+    private final ResolutionScaler resolutionScaler;
+
+    //Class indices of the label subset (null for all classes) and whether to softmax over just those classes
+    private final int[] labelSubset;
+    private final boolean renormaliseSubset;
+
+    //TorchScript models take NCHW float input normalised with the torchvision mean and std
+    private final TensorLayout inputLayout;
+    private final TensorPreprocessor preprocessor;
+    private final Rect frameRegion = new Rect();
+
+    //Input buffers and tensors cached per resolution so switching resolution doesn't reallocate once warm.
+    //The tensors wrap the direct buffers the preprocessor writes to, so the input is never copied.
+    private final Map<InputResolution, TensorLayout> inputLayouts = new HashMap<>();
+    private final Map<InputResolution, ByteBuffer> inputBuffers = new HashMap<>();
+    private final Map<InputResolution, Tensor> inputTensors = new HashMap<>();
+
+    //Batched input for multi-crop classification, rebuilt when the batch size or resolution changes
+    private InputResolution batchResolution;
+    private TensorLayout batchLayout;
+    private ByteBuffer batchBuffer;
+    private Tensor batchTensor;
 
     /***
      * Constructor to create a PyTorch Mobile Classifier
@@ -25,25 +58,199 @@ public class PyTorchClassifier extends Classifier {
      * @param details the classifier details required to create the classifier
      */
     public PyTorchClassifier(Context context, ClassifierDetails details) {
+        this(context, details, null);
+    }
+
+    /***
+     * Constructor to create a PyTorch Mobile Classifier run according to an execution plan. The thread count
+     * of PyTorch Mobile is process wide, so it applies to every PyTorch classifier.
+     * @param context the context
+     * @param details the classifier details required to create the classifier
+     * @param plan the execution plan or null to use the defaults
+     */
+    public PyTorchClassifier(Context context, ClassifierDetails details, ExecutionPlan plan) {
         super();
-        String modelPath = ClassifierUtils.assetFilePath(context, details.getName());
-        this.model = Module.load(modelPath);
-        this.width = details.getWidth();
-        this.height = details.getHeight();
+        if (plan != null && plan.getNumThreads() > 0) setNumThreads(plan.getNumThreads());
+
+        long loadStart = SystemClock.elapsedRealtimeNanos();
+        long nativeHeapBefore = Debug.getNativeHeapAllocatedSize();
+        this.model = loadModule(context, details.getName());
+        Log.i("PyTorch", String.format(Locale.ROOT, "%s loaded in %.1f ms, native heap +%.1f MB", details.getName(),
+                (SystemClock.elapsedRealtimeNanos() - loadStart) / 1e6f,
+                (Debug.getNativeHeapAllocatedSize() - nativeHeapBefore) / 1048576.0f));
         this.classes = details.getClasses();
+        this.labelSubset = resolveLabelSubset(classes, details.getLabelSubset());
+        this.renormaliseSubset = details.getRenormaliseSubset();
+
+        List<InputResolution> resolutions = details.getResolutions();
+        if (plan != null && plan.getResolution() != null) {
+            resolutions = Collections.singletonList(plan.getResolution());
+        } else if (resolutions == null || resolutions.isEmpty()) {
+            resolutions = Collections.singletonList(new InputResolution(details.getWidth(), details.getHeight()));
+        }
+        this.resolutionScaler = new ResolutionScaler(resolutions, details.getLatencyBudgetMs());
+
+        this.inputLayout = new TensorLayout(TensorLayout.Order.NCHW, TensorLayout.DataType.FLOAT32,
+                new int[]{1, 3, details.getHeight(), details.getWidth()}, 1.0f, 0);
+        float[] mean = new float[3];
+        float[] std = new float[3];
+        for (int c = 0; c < 3; c++) {
+            mean[c] = TensorImageUtils.TORCHVISION_NORM_MEAN_RGB[c] * 255.0f;
+            std[c] = TensorImageUtils.TORCHVISION_NORM_STD_RGB[c] * 255.0f;
+        }
+        this.preprocessor = new TensorPreprocessor(mean, std);
     }
 
     /***
-     * Method to pre-process the bitmap and create a Tensor object
+     * Method to set the number of threads of PyTorch Mobile, which applies to every PyTorch classifier
+     * @param threads the number of threads
+     */
+    public static synchronized void setNumThreads(int threads) {
+        PyTorchAndroid.setNumThreads(threads);
+        numThreads = threads;
+    }
+
+    /***
+     * Method to get the number of threads of PyTorch Mobile. PyTorch doesn't report the size of its default
+     * thread pool, so until a thread count has been set it is approximated by the cores, leaving out half of them
+     * on processors with more than four cores as PyTorch Mobile does for the little cores of big.LITTLE designs.
+     * @return the number of threads
+     */
+    public static synchronized int getNumThreads() {
+        if (numThreads > 0) return numThreads;
+        int cores = Runtime.getRuntime().availableProcessors();
+        return cores > 4 ? cores / 2 : cores;
+    }
+
+    /***
+     * Method to load a model. Full TorchScript models (".pt") have to be extracted from the APK to a file first,
+     * while lite-interpreter models (".ptl") are read straight from the uncompressed asset.
+     * @param context the context
+     * @param name the model name
+     * @return the loaded module
+     */
+    private static Module loadModule(Context context, String name) {
+        if (!name.endsWith(".ptl")) return Module.load(ClassifierUtils.assetFilePath(context, name));
+
+        try {
+            return LiteModuleLoader.loadModuleFromAsset(context.getAssets(), name);
+        } catch (RuntimeException e) {
+            // e.g. an asset which was compressed into the APK and can't be read in place
+            Log.e("TAG", "Error: Cannot load " + name + " from the APK, extracting it instead: " + e.getMessage());
+            return LiteModuleLoader.load(ClassifierUtils.assetFilePath(context, name));
+        }
+    }
+
+    /***
+     * Method to pre-process the bitmap into the cached input tensor for the given resolution. The whole frame
+     * is scaled to the input size with nearest neighbour sampling.
      * @param bitmap the image bitmap
-     * @param width the image width expected by the model
-     * @param height the image height expected by the model
+     * @param resolution the input resolution to feed the model
      * @return Tensor object
      */
-    public Tensor preprocess(Bitmap bitmap, int width, int height) {
+    public Tensor preprocess(Bitmap bitmap, InputResolution resolution) {
+        Tensor tensor = inputTensors.get(resolution);
+        if (tensor == null) {
+            TensorLayout layout = inputLayout.resize(1, resolution.getWidth(), resolution.getHeight());
+            ByteBuffer buffer = layout.allocate();
+            tensor = Tensor.fromBlob(buffer.asFloatBuffer(), new long[]{1, 3, resolution.getHeight(), resolution.getWidth()});
+            inputLayouts.put(resolution, layout);
+            inputBuffers.put(resolution, buffer);
+            inputTensors.put(resolution, tensor);
+        }
+
+        frameRegion.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        preprocessor.write(bitmap, frameRegion, false, inputLayouts.get(resolution), inputBuffers.get(resolution), 0);
+        return tensor;
+    }
+
+    /***
+     * Method to run the model on a bitmap at the current input resolution and adjust the resolution to the latency budget
+     * @param bitmap the image bitmap
+     * @return the scores produced by the model
+     */
+    private float[] forward(Bitmap bitmap) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        InputResolution resolution = resolutionScaler.getResolution();
+        // the first run at a resolution allocates its input and warms the runtime up, so it isn't recorded
+        boolean warm = inputTensors.containsKey(resolution);
+        Tensor tensor = preprocess(bitmap, resolution);
+        IValue inputs = IValue.from(tensor);
+        Tensor outputs = model.forward(inputs).toTensor();
+        float[] scores = outputs.getDataAsFloatArray();
+        if (warm) resolutionScaler.record((SystemClock.elapsedRealtimeNanos() - start) / 1e6f);
+        return scores;
+    }
+
+    /***
+     * Method to classify several crops of a bitmap in a single batched forward pass at the current input resolution
+     * @param bitmap the image bitmap
+     * @param crops the regions of the bitmap to classify
+     * @return the scores of each crop
+     */
+    @Override
+    public float[][] batchScores(Bitmap bitmap, Rect[] crops) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        InputResolution resolution = resolutionScaler.getResolution();
+        int width = resolution.getWidth();
+        int height = resolution.getHeight();
+
+        // the batch's cost is the frame's cost, so it drives the resolution unless the batch was just rebuilt
+        boolean warm = batchTensor != null && resolution.equals(batchResolution) && batchLayout.getBatch() == crops.length;
+        if (!warm) {
+            batchResolution = resolution;
+            batchLayout = inputLayout.resize(crops.length, width, height);
+            batchBuffer = batchLayout.allocate();
+            batchTensor = Tensor.fromBlob(batchBuffer.asFloatBuffer(), new long[]{crops.length, 3, height, width});
+        }
+
+        // each crop is resampled straight into its slot of the batch, from a single read of the frame's pixels
+        preprocessor.writeBatch(bitmap, crops, true, batchLayout, batchBuffer);
+
+        float[] outputs = model.forward(IValue.from(batchTensor)).toTensor().getDataAsFloatArray();
+        if (warm) resolutionScaler.record((SystemClock.elapsedRealtimeNanos() - start) / 1e6f);
+
+        // the logits of each crop are turned into probabilities so crops (and engines) are comparable
+        int classCount = outputs.length / crops.length;
+        float[][] scores = new float[crops.length][];
+        for (int i = 0; i < crops.length; i++) {
+            float[] logits = new float[classCount];
+            if (labelSubset == null) {
+                System.arraycopy(outputs, i * classCount, logits, 0, classCount);
+            } else {
+                for (int index : labelSubset) logits[index] = outputs[i * classCount + index];
+            }
+            scores[i] = softmax(logits, labelSubset);
+        }
+        return scores;
+    }
+
+    /***
+     * Method to get the softmax probability of every class, over the label subset if there is one
+     * @param bitmap the image bitmap
+     * @return the probabilities aligned with getClasses()
+     */
+    @Override
+    public float[] classProbabilities(Bitmap bitmap) {
+        return softmax(forward(bitmap), labelSubset);
+    }
 
-        bitmap = Bitmap.createScaledBitmap(bitmap, width, height, false);
-        return TensorImageUtils.bitmapToFloat32Tensor(bitmap, TensorImageUtils.TORCHVISION_NORM_MEAN_RGB, TensorImageUtils.TORCHVISION_NORM_STD_RGB);
+    /***
+     * Method to get the set of classes the model was trained on
+     * @return String array of classes (image labels)
+     */
+    @Override
+    public String[] getClasses() {
+        return classes;
+    }
+
+    /***
+     * Method to get the indices of the classes the predictions are restricted to
+     * @return the ascending class indices, or null if every class is predicted
+     */
+    @Override
+    public int[] getLabelSubset() {
+        return labelSubset;
     }
 
     /***
@@ -74,10 +281,8 @@ public class PyTorchClassifier extends Classifier {
      * @return the Prediction produced by the classifier for the given bitmap
      */
     public Prediction predict(Bitmap bitmap) {
-        Tensor tensor = preprocess(bitmap, width, height);
-        IValue inputs = IValue.from(tensor);
-        Tensor outputs = model.forward(inputs).toTensor();
-        float[] scores = outputs.getDataAsFloatArray();
+        float[] scores = forward(bitmap);
+        if (labelSubset != null || renormaliseSubset) return toPredictions(scores, 1).get(0);
 
         int classIndex = argMax(scores);
 
@@ -91,18 +296,29 @@ public class PyTorchClassifier extends Classifier {
      * @return A list containing the top 3 predictions produced by the classifier
      */
     public List<Prediction> topKPredictions(Bitmap bitmap) {
-        List<Prediction> predictions = new ArrayList<>(TOP_K);
-        Tensor tensor = preprocess(bitmap, width, height);
-        IValue inputs = IValue.from(tensor);
-        Tensor outputs = model.forward(inputs).toTensor();
-        float[] scores = outputs.getDataAsFloatArray();
-        int[] indices = topK(scores);
+        return toPredictions(forward(bitmap), TOP_K);
+    }
+
+    /***
+     * Method to turn the scores of the model into the top predictions, only visiting the classes of the label
+     * subset. With renormalisation the confidences are the softmax over the subset, otherwise the raw scores.
+     * @param scores the scores produced by the model
+     * @param k the number of predictions to return, at most 3
+     * @return A list containing the top predictions
+     */
+    private List<Prediction> toPredictions(float[] scores, int k) {
+        List<Prediction> predictions = new ArrayList<>(k);
+        int[] indices = topK(scores, labelSubset);
+        if (indices[0] < 0) return predictions;
+
+        float max = scores[indices[0]];
+        float denominator = renormaliseSubset ? softmaxDenominator(scores, labelSubset, max) : 1.0f;
 
-        for (int i = 0; i < TOP_K; i++) {
+        for (int i = 0; i < k && indices[i] >= 0; i++) {
             int index = indices[i];
 
             String label = classes[index];
-            Float confidence = scores[index];
+            Float confidence = renormaliseSubset ? (float) Math.exp(scores[index] - max) / denominator : scores[index];
 
             predictions.add(new Prediction(label, confidence));
         }
@@ -111,29 +327,28 @@ public class PyTorchClassifier extends Classifier {
     }
 
     /***
-     * Method to get the indices of the top 3 prediction confidence scores
-     * @param scores prediction scores
-     * @return indices of the top 3 predictions
+     * Method to get the longest side of the largest input resolution the model is run at
+     * @return the largest input side in pixels
      */
-    protected int[] topK(float[] scores) {
-        float[] values = new float[TOP_K];
-        Arrays.fill(values, -Float.MAX_VALUE);
-        int[] indices = new int[TOP_K];
-        Arrays.fill(indices, -1);
+    @Override
+    public int getInputSize() {
+        return resolutionScaler.getMaxInputSize();
+    }
 
-        for (int i = 0; i < scores.length; i++) {
-            for (int j = 0; j < TOP_K; j++) {
-                if (scores[i] > values[j]) {
-                    for (int k = TOP_K - 1; k >= j + 1; k--) {
-                        values[k] = values[k - 1];
-                        indices[k] = indices[k - 1];
-                    }
-                    values[j] = scores[i];
-                    indices[j] = i;
-                    break;
-                }
-            }
-        }
-        return indices;
+    /***
+     * Method to get the current input resolution and latency for display
+     * @return the formatted statistics
+     */
+    @Override
+    public String getStatistics() {
+        return resolutionScaler.describe();
+    }
+
+    /***
+     * Method to release the native module
+     */
+    @Override
+    public void close() {
+        model.destroy();
     }
 }
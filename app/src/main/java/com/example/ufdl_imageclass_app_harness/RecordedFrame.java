@@ -0,0 +1,82 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import java.nio.ByteBuffer;
+
+/***
+ * A camera frame read back from a frame recording. The plane buffers are read-only views of the
+ * memory mapped recording, so they are only valid while the FrameReplayer is open. The planes keep the row
+ * and pixel strides they were recorded with.
+ */
+
+public class RecordedFrame {
+    private final long time;
+    private final int width;
+    private final int height;
+    private final int rotationToUser;
+    private final int rotationToView;
+    private final int format;
+    private final ByteBuffer[] planes;
+    private final int[] rowStrides;
+    private final int[] pixelStrides;
+
+    /***
+     * Constructor to create a recorded frame
+     * @param time the frame timestamp in milliseconds as reported by the camera
+     * @param width the frame width
+     * @param height the frame height
+     * @param rotationToUser the rotation to apply to the frame to match the user orientation
+     * @param rotationToView the rotation to apply to the frame to match the view orientation
+     * @param format the ImageFormat of the frame data
+     * @param planes the frame planes: Y, U and V for YUV_420_888 frames or a single plane for byte[] frames
+     * @param rowStrides the row stride of each plane
+     * @param pixelStrides the pixel stride of each plane
+     */
+    public RecordedFrame(long time, int width, int height, int rotationToUser, int rotationToView, int format,
+                         ByteBuffer[] planes, int[] rowStrides, int[] pixelStrides) {
+        this.time = time;
+        this.width = width;
+        this.height = height;
+        this.rotationToUser = rotationToUser;
+        this.rotationToView = rotationToView;
+        this.format = format;
+        this.planes = planes;
+        this.rowStrides = rowStrides;
+        this.pixelStrides = pixelStrides;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRotationToUser() {
+        return rotationToUser;
+    }
+
+    public int getRotationToView() {
+        return rotationToView;
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    public ByteBuffer[] getPlanes() {
+        return planes;
+    }
+
+    public int[] getRowStrides() {
+        return rowStrides;
+    }
+
+    public int[] getPixelStrides() {
+        return pixelStrides;
+    }
+}
@@ -0,0 +1,385 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * A classifier which offloads inference to an HTTP server and falls back to a local model when the server is
+ * too slow or unreachable. Frames are resized to the model input size and compressed on the calling thread, so
+ * no bitmap is kept after topKPredictions returns, and then queued. A fixed set of sender threads each keep a
+ * keep-alive connection to the server, so several requests can be in flight at once, and a sender posts every
+ * frame which queued up behind it in a single batched request (see RemoteProtocol).
+ *
+ * Submission is pipelined by one frame: each call queues its frame and returns the remote result of the
+ * previous frame, waiting for it at most until the round-trip budget since that frame was queued has passed,
+ * so results lag by at most one frame. Frames which are still queued once a newer frame's result is wanted are
+ * dropped unsent. The frame is classified locally when the previous result misses the budget, and while the
+ * smoothed round-trip time exceeds the budget, when a probe frame is sent now and then to find out when the
+ * server has recovered.
+ */
+
+public class RemoteClassifier extends Classifier {
+    private static final long PROBE_INTERVAL_MS = 1000;
+    private static final float SMOOTHING = 0.2f;
+    private static final long POLL_MS = 100;
+
+    private final Classifier fallback;
+    private final URL endpoint;
+    private final String name;
+    private final Bitmap.CompressFormat format;
+    private final String imageType;
+    private final int quality;
+    private final int inputSize;
+    private final float budgetMs;
+    private final int maxBatch;
+    private final int maxQueued;
+
+    //scratch state of encode, reused between frames
+    private final ImageKernels kernels = ImageKernels.getDefault();
+    private final ImageKernels.ColumnMap columns = new ImageKernels.ColumnMap();
+    private int[] framePixels = new int[0];
+    private int[] scaledPixels;
+    private Bitmap scaled;
+
+    private final LinkedBlockingQueue<PendingFrame> queue = new LinkedBlockingQueue<>();
+    private final Thread[] senders;
+    private volatile boolean closed;
+
+    //the frame queued by the previous call, whose result the next call returns
+    private PendingFrame previous;
+    private long sequence;
+
+    //smoothed round-trip time of the requests, written by the senders
+    private volatile float roundTripMs;
+    private long lastProbe;
+
+    //runtime statistics
+    private long remoteFrames;
+    private long localFrames;
+    private long timeouts;
+    private long staleFrames;
+    private volatile long requests;
+    private volatile long batchedFrames;
+
+    /***
+     * Constructor to create a remote classifier
+     * @param context the context
+     * @param details the remote details naming the endpoint, the fallback model and the pipelining limits
+     * @throws IOException if the fallback model could not be created or the endpoint is not a valid URL
+     */
+    public RemoteClassifier(Context context, RemoteDetails details) throws IOException {
+        super();
+        this.fallback = createMember(context, details.getFallbackModel());
+        this.endpoint = new URL(details.getEndpoint());
+        this.name = details.getName();
+        boolean webp = "webp".equalsIgnoreCase(details.getFormat());
+        this.format = webp ? Bitmap.CompressFormat.WEBP : Bitmap.CompressFormat.JPEG;
+        this.imageType = webp ? "image/webp" : "image/jpeg";
+        this.quality = details.getQuality();
+        this.inputSize = details.getInputSize() > 0 ? details.getInputSize() : Math.max(fallback.getInputSize(), 224);
+        this.budgetMs = details.getBudgetMs();
+        this.maxBatch = Math.max(1, details.getMaxBatch());
+
+        int maxInFlight = Math.max(1, details.getMaxInFlight());
+        this.maxQueued = maxInFlight * maxBatch;
+        this.senders = new Thread[maxInFlight];
+        for (int i = 0; i < maxInFlight; i++) {
+            senders[i] = new Thread(this::send, "remote-" + i);
+            senders[i].start();
+        }
+    }
+
+    /***
+     * A method to queue a bitmap for the server and get the top 3 predictions of the previous frame from the
+     * server, or of this bitmap from the fallback model if the server's result doesn't arrive within the budget
+     * @param bitmap the bitmap to feed the image classifier
+     * @return A list containing the top 3 predictions
+     */
+    @Override
+    public List<Prediction> topKPredictions(Bitmap bitmap) {
+        long now = SystemClock.elapsedRealtime();
+        PendingFrame waitFor = previous;
+        previous = null;
+        sequence++;
+
+        if (roundTripMs > budgetMs) {
+            // the server is too slow, probe it in the background and classify locally
+            if (now - lastProbe >= PROBE_INTERVAL_MS && queue.isEmpty()) {
+                lastProbe = now;
+                queue.offer(new PendingFrame(encode(bitmap), sequence, now));
+            }
+            return classifyLocally(bitmap);
+        }
+
+        // only the previous frame's result is still wanted, older frames which weren't sent yet are dropped
+        dropStaleFrames(waitFor != null ? waitFor.sequence : sequence);
+        if (queue.size() < maxQueued) {
+            previous = new PendingFrame(encode(bitmap), sequence, now);
+            queue.offer(previous);
+        }
+
+        if (waitFor != null) {
+            try {
+                long remainingMicros = (long) (budgetMs * 1000) - (SystemClock.elapsedRealtime() - waitFor.queuedAt) * 1000;
+                if (waitFor.done.await(Math.max(0, remainingMicros), TimeUnit.MICROSECONDS) && waitFor.predictions != null) {
+                    remoteFrames++;
+                    return waitFor.predictions;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            timeouts++;
+        }
+        return classifyLocally(bitmap);
+    }
+
+    /***
+     * Method to remove the queued frames older than a frame, whose results are no longer wanted
+     * @param oldest the sequence number of the oldest frame to keep
+     */
+    private void dropStaleFrames(long oldest) {
+        PendingFrame head;
+        while ((head = queue.peek()) != null && head.sequence < oldest) {
+            if (queue.remove(head)) {
+                head.done.countDown();
+                staleFrames++;
+            }
+        }
+    }
+
+    /***
+     * Method to classify a frame with the fallback model
+     * @param bitmap the bitmap to feed the image classifier
+     * @return A list containing the top 3 predictions
+     */
+    private List<Prediction> classifyLocally(Bitmap bitmap) {
+        localFrames++;
+        return fallback.topKPredictions(bitmap);
+    }
+
+    /***
+     * Method to resize a bitmap to the input size and compress it. The frame is resized with bilinear sampling by
+     * the shared ImageKernels into a bitmap reused between frames.
+     * @param bitmap the bitmap
+     * @return the encoded image
+     */
+    private byte[] encode(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (framePixels.length < width * height) framePixels = new int[width * height];
+        bitmap.getPixels(framePixels, 0, width, 0, 0, width, height);
+
+        if (scaled == null) {
+            scaledPixels = new int[inputSize * inputSize];
+            scaled = Bitmap.createBitmap(inputSize, inputSize, Bitmap.Config.ARGB_8888);
+        }
+        columns.set(0, width, inputSize, true);
+        kernels.resize(framePixels, width, columns, 0, height, scaledPixels, inputSize);
+        scaled.setPixels(scaledPixels, 0, inputSize, 0, 0, inputSize, inputSize);
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(inputSize * inputSize / 4);
+        scaled.compress(format, quality, encoded);
+        return encoded.toByteArray();
+    }
+
+    /***
+     * The sender loop, which posts the frames queued up behind the first waiting frame as one batch
+     */
+    private void send() {
+        List<PendingFrame> batch = new ArrayList<>(maxBatch);
+        while (!closed) {
+            try {
+                PendingFrame first = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                post(batch);
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                for (PendingFrame frame : batch) frame.done.countDown();
+                batch.clear();
+            }
+        }
+    }
+
+    /***
+     * Method to post a batch of frames to the server and hand out the predictions. The response is read to
+     * the end and the stream closed rather than disconnecting, so the connection is kept alive for the next batch.
+     * @param batch the frames to classify
+     */
+    private void post(List<PendingFrame> batch) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        HttpURLConnection connection = null;
+        try {
+            List<byte[]> images = new ArrayList<>(batch.size());
+            for (PendingFrame frame : batch) images.add(frame.image);
+
+            connection = (HttpURLConnection) endpoint.openConnection();
+            int timeout = (int) Math.max(budgetMs * 10, 2000);
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", RemoteProtocol.BATCH_CONTENT_TYPE);
+            connection.setRequestProperty("X-Image-Type", imageType);
+            connection.setFixedLengthStreamingMode(RemoteProtocol.bodyLength(images));
+            RemoteProtocol.writeBatch(connection.getOutputStream(), images);
+
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                drain(connection.getErrorStream());
+                throw new IOException("HTTP " + connection.getResponseCode());
+            }
+
+            List<List<RemoteProtocol.RemotePrediction>> predictions = RemoteProtocol.readPredictions(connection.getInputStream());
+            for (int i = 0; i < batch.size() && predictions != null && i < predictions.size(); i++) {
+                batch.get(i).predictions = toPredictions(predictions.get(i));
+            }
+
+            requests++;
+            batchedFrames += batch.size();
+            updateRoundTrip((SystemClock.elapsedRealtimeNanos() - start) / 1e6f);
+        } catch (IOException e) {
+            Log.e("TAG", "Error: Remote inference failed: " + e.getMessage());
+            // counts as a missed budget, so frames are classified locally until a probe succeeds
+            updateRoundTrip(Math.max(roundTripMs, budgetMs * 2));
+            if (connection != null) connection.disconnect();
+        }
+    }
+
+    /***
+     * Method to read a stream to the end and close it so its connection can be reused
+     * @param in the stream or null
+     * @throws IOException if the stream cannot be read
+     */
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) return;
+        byte[] buffer = new byte[4096];
+        while (in.read(buffer) >= 0) {
+            //discard
+        }
+        in.close();
+    }
+
+    /***
+     * Method to fold a round-trip time into the smoothed round-trip time
+     * @param ms the round-trip time in milliseconds
+     */
+    private synchronized void updateRoundTrip(float ms) {
+        roundTripMs = roundTripMs == 0.0f ? ms : roundTripMs + SMOOTHING * (ms - roundTripMs);
+    }
+
+    /***
+     * Method to convert the predictions of one image in a response, keeping the top 3
+     * @param remote the predictions sent by the server
+     * @return the predictions
+     */
+    private List<Prediction> toPredictions(List<RemoteProtocol.RemotePrediction> remote) {
+        if (remote == null) return null;
+        List<Prediction> predictions = new ArrayList<>(TOP_K);
+        for (int i = 0; i < remote.size() && i < TOP_K; i++) {
+            predictions.add(new Prediction(remote.get(i).getLabel(), remote.get(i).getConfidence()));
+        }
+        return predictions;
+    }
+
+    /***
+     * Method to get a single prediction, which like the top K predictions may be of the previous frame
+     * @param bitmap the bitmap to feed to the image classifier
+     * @return the top prediction or null if there are no predictions
+     */
+    @Override
+    public Prediction predict(Bitmap bitmap) {
+        List<Prediction> predictions = topKPredictions(bitmap);
+        return predictions.isEmpty() ? null : predictions.get(0);
+    }
+
+    /***
+     * Method to get the set of classes of the fallback model
+     * @return String array of classes (image labels)
+     */
+    @Override
+    public String[] getClasses() {
+        return fallback.getClasses();
+    }
+
+    /***
+     * Method to get the labels of the fallback model. The server may predict other labels, which are only known
+     * once they are predicted.
+     * @return String array of labels
+     */
+    @Override
+    public String[] getPredictedLabels() {
+        return fallback.getPredictedLabels();
+    }
+
+    /***
+     * Method to get the input size of the fallback model, which also bounds the frames sent to the server
+     * @return the largest input side in pixels
+     */
+    @Override
+    public int getInputSize() {
+        return Math.max(inputSize, fallback.getInputSize());
+    }
+
+    /***
+     * Method to get the share of remotely classified frames and the round-trip and batching figures for display
+     * @return the formatted statistics
+     */
+    @Override
+    public String getStatistics() {
+        long frames = remoteFrames + localFrames;
+        long sent = requests;
+        return String.format(Locale.ROOT, "%s: %.0f%% remote  %d timeouts  %d stale  rtt %.0f ms  batch %.1f",
+                name, frames == 0 ? 0.0f : remoteFrames * 100.0f / frames, timeouts, staleFrames, roundTripMs,
+                sent == 0 ? 0.0f : (float) batchedFrames / sent);
+    }
+
+    /***
+     * Method to stop the senders and release the fallback model
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread sender : senders) sender.interrupt();
+        fallback.close();
+        if (scaled != null) scaled.recycle();
+    }
+
+    /***
+     * A frame waiting for its remote predictions
+     */
+    private static class PendingFrame {
+        private final byte[] image;
+        private final long sequence;
+        private final long queuedAt;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile List<Prediction> predictions;
+
+        /***
+         * Constructor to create a pending frame
+         * @param image the encoded frame
+         * @param sequence the number of the call which queued the frame
+         * @param queuedAt the elapsed realtime at which the frame was queued
+         */
+        PendingFrame(byte[] image, long sequence, long queuedAt) {
+            this.image = image;
+            this.sequence = sequence;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.ufdl_imageclass_app_harness;
+
+/***
+ A class to encapsulate the information required to build a RemoteClassifier. Remote manifests are
+ stored in the assets folder as "[name].remote.json".
+ */
+
+public class RemoteDetails {
+    private String name;
+    private String endpoint;
+    private String fallbackModel;
+
+    //Encoding of the frames sent to the server
+    private int inputSize = 0;          //side of the square image sent, 0 to use the fallback model's input size
+    private String format = "jpeg";     //"jpeg" or "webp"
+    private int quality = 85;
+
+    //Pipelining and fallback
+    private float budgetMs = 150.0f;    //round-trip time above which frames are classified locally
+    private int maxInFlight = 2;        //number of concurrent connections (and requests) to the server
+    private int maxBatch = 4;           //number of queued frames sent in a single request
+
+    /***
+     * Default constructor for RemoteDetails
+     */
+    public RemoteDetails() {
+        super();
+    }
+
+    /***
+     * Method to get the manifest name
+     * @return the manifest name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /***
+     * Method to get the URL frames are posted to
+     * @return the inference endpoint
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /***
+     * Method to get the name of the local model used when the server is too slow or unreachable
+     * @return the fallback model name
+     */
+    public String getFallbackModel() {
+        return fallbackModel;
+    }
+
+    /***
+     * Method to get the side of the square image sent to the server
+     * @return the input size in pixels, or 0 to use the fallback model's input size
+     */
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    /***
+     * Method to get the image format frames are compressed to
+     * @return "jpeg" or "webp"
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    /***
+     * Method to get the compression quality
+     * @return the quality between 0 and 100
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    /***
+     * Method to get the round-trip time budget
+     * @return the budget in milliseconds
+     */
+    public float getBudgetMs() {
+        return budgetMs;
+    }
+
+    /***
+     * Method to get the number of requests which may be in flight at once
+     * @return the maximum number of requests in flight
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /***
+     * Method to get the number of queued frames which may be sent in a single request
+     * @return the maximum batch size
+     */
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+}
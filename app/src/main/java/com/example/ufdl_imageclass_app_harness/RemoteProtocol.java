@@ -0,0 +1,99 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/***
+ * The wire format spoken by RemoteClassifier and tools/remote_inference_server.py. It only depends on java.io and
+ * Jackson, so it can be tested in a plain JVM.
+ *
+ * Request body: [int count]{[int length][encoded image]}*count, big-endian, sent as BATCH_CONTENT_TYPE with
+ * the image format in the X-Image-Type header.
+ * Response: {"predictions": [[{"label": "...", "confidence": 0.9}, ...], ...]} with one list of predictions
+ * per image, in request order.
+ */
+
+public class RemoteProtocol {
+    public static final String BATCH_CONTENT_TYPE = "application/x-ufdl-image-batch";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /***
+     * Method to get the length of a request body
+     * @param images the encoded images of the batch
+     * @return the number of bytes writeBatch writes
+     */
+    public static int bodyLength(List<byte[]> images) {
+        int length = 4;
+        for (byte[] image : images) length += 4 + image.length;
+        return length;
+    }
+
+    /***
+     * Method to write a batch of images as a request body
+     * @param out the request stream, which is closed afterwards
+     * @param images the encoded images of the batch
+     * @throws IOException if the body cannot be written
+     */
+    public static void writeBatch(OutputStream out, List<byte[]> images) throws IOException {
+        try (DataOutputStream data = new DataOutputStream(out)) {
+            data.writeInt(images.size());
+            for (byte[] image : images) {
+                data.writeInt(image.length);
+                data.write(image);
+            }
+        }
+    }
+
+    /***
+     * Method to read the predictions of a response body
+     * @param in the response stream, which is closed afterwards
+     * @return one list of predictions per image in request order, or null if the response has none
+     * @throws IOException if the response cannot be read or parsed
+     */
+    public static List<List<RemotePrediction>> readPredictions(InputStream in) throws IOException {
+        try (InputStream response = in) {
+            return MAPPER.readValue(response, RemoteResponse.class).predictions;
+        }
+    }
+
+    /***
+     * The body of a server response
+     */
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    static class RemoteResponse {
+        List<List<RemotePrediction>> predictions;
+    }
+
+    /***
+     * A single prediction in a server response
+     */
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    public static class RemotePrediction {
+        String label;
+        float confidence;
+
+        /***
+         * Method to get the predicted label
+         * @return the label
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /***
+         * Method to get the confidence of the prediction
+         * @return the confidence
+         */
+        public float getConfidence() {
+            return confidence;
+        }
+    }
+}
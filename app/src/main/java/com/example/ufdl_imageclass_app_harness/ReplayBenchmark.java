@@ -0,0 +1,158 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/***
+ * A harness replaying a frame recording through the frame conversion of the app, ImageKernels.yuv420ToNv21 and
+ * nv21ToArgb, into a classifier, timing both stages per frame. Like the recording format and the kernels it
+ * doesn't depend on Android, so recordings taken on a device can be replayed on any JVM with a stub classifier,
+ * printing each frame's label and timings as CSV:
+ * java ReplayBenchmark walk.frames [threads] > replay.csv
+ * Only YUV_420_888 and NV21 frames are replayed; frames in other formats are skipped and counted.
+ */
+
+public class ReplayBenchmark {
+    static final int NV21 = 0x11;
+    static final int YUV_420_888 = 0x23;
+
+    /***
+     * A classifier of converted frames
+     */
+    public interface FrameClassifier {
+        /***
+         * Method to classify a frame
+         * @param argb the ARGB pixels of the frame, which may be reused once this returns
+         * @param width the frame width
+         * @param height the frame height
+         * @return the top label
+         */
+        String classify(int[] argb, int width, int height);
+    }
+
+    /***
+     * The labels and timings of a replay
+     */
+    public static class Result {
+        public final List<String> labels = new ArrayList<>();
+        public final List<Long> times = new ArrayList<>();
+        public final List<Long> convertNanos = new ArrayList<>();
+        public final List<Long> classifyNanos = new ArrayList<>();
+        public int skipped;
+    }
+
+    /***
+     * Runs the harness and writes the results to standard output
+     * @param args the recording file and the number of conversion threads (all cores by default)
+     * @throws IOException if the recording cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: ReplayBenchmark <recording> [threads]");
+            return;
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        ImageKernels kernels = new ImageKernels(threads);
+        Result result;
+        try {
+            result = run(new File(args[0]), kernels, ReplayBenchmark::meanColour);
+        } finally {
+            kernels.close();
+        }
+
+        System.out.println("frame,time,label,convert_ms,classify_ms");
+        for (int i = 0; i < result.labels.size(); i++) {
+            System.out.println(String.format(Locale.ROOT, "%d,%d,%s,%.3f,%.3f", i, result.times.get(i),
+                    result.labels.get(i), result.convertNanos.get(i) / 1e6f, result.classifyNanos.get(i) / 1e6f));
+        }
+        if (result.skipped > 0) System.err.println("Skipped " + result.skipped + " frames in other formats");
+    }
+
+    /***
+     * Method to replay a recording through the conversion into a classifier
+     * @param recording the recording file
+     * @param kernels the kernels to convert the frames with
+     * @param classifier the classifier of the converted frames
+     * @return the labels and timings of the replayed frames
+     * @throws IOException if the recording cannot be read
+     */
+    public static Result run(File recording, ImageKernels kernels, FrameClassifier classifier) throws IOException {
+        return run(recording, FrameReplayer.SEGMENT_BYTES, kernels, classifier);
+    }
+
+    /***
+     * Method to replay a recording mapped in segments of a given size through the conversion into a classifier
+     * @param recording the recording file
+     * @param segmentBytes the preferred size of each mapped segment
+     * @param kernels the kernels to convert the frames with
+     * @param classifier the classifier of the converted frames
+     * @return the labels and timings of the replayed frames
+     * @throws IOException if the recording cannot be read
+     */
+    static Result run(File recording, long segmentBytes, ImageKernels kernels, FrameClassifier classifier) throws IOException {
+        Result result = new Result();
+        byte[] nv21 = new byte[0];
+        int[] argb = new int[0];
+
+        try (FrameReplayer replayer = new FrameReplayer(recording, segmentBytes)) {
+            RecordedFrame frame;
+            while ((frame = replayer.next()) != null) {
+                ByteBuffer[] planes = frame.getPlanes();
+                int width = frame.getWidth();
+                int height = frame.getHeight();
+                boolean yuv = frame.getFormat() == YUV_420_888 && planes.length >= 3;
+                if (!yuv && frame.getFormat() != NV21) {
+                    result.skipped++;
+                    continue;
+                }
+
+                if (nv21.length < width * height * 3 / 2) nv21 = new byte[width * height * 3 / 2];
+                if (argb.length < width * height) argb = new int[width * height];
+
+                long start = System.nanoTime();
+                if (yuv) {
+                    int[] rowStrides = frame.getRowStrides();
+                    kernels.yuv420ToNv21(planes[0], planes[1], planes[2], rowStrides[0], rowStrides[1],
+                            frame.getPixelStrides()[1], width, height, nv21);
+                } else {
+                    planes[0].duplicate().get(nv21, 0, width * height * 3 / 2);
+                }
+                kernels.nv21ToArgb(nv21, width, height, argb);
+                long converted = System.nanoTime();
+                String label = classifier.classify(argb, width, height);
+                long classified = System.nanoTime();
+
+                result.labels.add(label);
+                result.times.add(frame.getTime());
+                result.convertNanos.add(converted - start);
+                result.classifyNanos.add(classified - converted);
+            }
+        }
+        return result;
+    }
+
+    /***
+     * Method to label a frame with its mean colour, a stand-in for a model which only costs a pass over the pixels
+     * @param argb the ARGB pixels of the frame
+     * @param width the frame width
+     * @param height the frame height
+     * @return the mean colour as RRGGBB
+     */
+    private static String meanColour(int[] argb, int width, int height) {
+        long red = 0;
+        long green = 0;
+        long blue = 0;
+        int pixels = width * height;
+        for (int i = 0; i < pixels; i++) {
+            red += (argb[i] >> 16) & 0xFF;
+            green += (argb[i] >> 8) & 0xFF;
+            blue += argb[i] & 0xFF;
+        }
+        return String.format(Locale.ROOT, "%02x%02x%02x", red / pixels, green / pixels, blue / pixels);
+    }
+}
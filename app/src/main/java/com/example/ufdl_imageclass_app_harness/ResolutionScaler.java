@@ -0,0 +1,89 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/***
+ * A class to pick the input resolution of a model at runtime. It tracks a moving average of the inference
+ * latency and drops to the next lower resolution when the latency budget is exceeded, stepping back up once
+ * there is plenty of headroom.
+ */
+
+public class ResolutionScaler {
+    private static final float SMOOTHING = 0.2f;
+    private static final float STEP_UP_HEADROOM = 0.6f;
+    private static final int SETTLE_FRAMES = 10;
+
+    private final List<InputResolution> resolutions;
+    private final float latencyBudgetMs;
+    private int current;
+    private float averageMs;
+    private int framesAtCurrent;
+
+    /***
+     * Constructor to create a resolution scaler
+     * @param resolutions the supported resolutions
+     * @param latencyBudgetMs the latency budget in milliseconds, or 0 to always use the highest resolution
+     */
+    public ResolutionScaler(List<InputResolution> resolutions, float latencyBudgetMs) {
+        this.resolutions = new ArrayList<>(resolutions);
+        Collections.sort(this.resolutions, (a, b) -> Integer.compare(b.getWidth() * b.getHeight(), a.getWidth() * a.getHeight()));
+        this.latencyBudgetMs = latencyBudgetMs;
+        this.current = 0;
+    }
+
+    /***
+     * Method to get the resolution the next frame should be classified at
+     * @return the current input resolution
+     */
+    public InputResolution getResolution() {
+        return resolutions.get(current);
+    }
+
+    /***
+     * Method to get the longest side of the largest supported resolution
+     * @return the largest input side in pixels
+     */
+    public int getMaxInputSize() {
+        InputResolution largest = resolutions.get(0);
+        return Math.max(largest.getWidth(), largest.getHeight());
+    }
+
+    /***
+     * Method to record the latency of a frame and adjust the resolution if needed
+     * @param latencyMs the time taken to classify the frame in milliseconds
+     */
+    public void record(float latencyMs) {
+        framesAtCurrent++;
+        averageMs = framesAtCurrent == 1 ? latencyMs : averageMs + SMOOTHING * (latencyMs - averageMs);
+
+        // give the moving average some frames to settle before judging a resolution
+        if (latencyBudgetMs <= 0 || framesAtCurrent < SETTLE_FRAMES) return;
+
+        if (averageMs > latencyBudgetMs && current < resolutions.size() - 1) {
+            switchTo(current + 1);
+        } else if (averageMs < latencyBudgetMs * STEP_UP_HEADROOM && current > 0) {
+            switchTo(current - 1);
+        }
+    }
+
+    /***
+     * Method to switch to a different resolution and restart the latency average
+     * @param index the index of the new resolution
+     */
+    private void switchTo(int index) {
+        current = index;
+        framesAtCurrent = 0;
+    }
+
+    /***
+     * Method to describe the current resolution and latency for display
+     * @return the formatted description
+     */
+    public String describe() {
+        String description = String.format(Locale.ROOT, "Input: %s  Avg: %.1f ms", getResolution(), averageMs);
+        return latencyBudgetMs > 0 ? description + String.format(Locale.ROOT, " (budget %.0f ms)", latencyBudgetMs) : description;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.util.SparseArray;
+
+import java.util.ArrayDeque;
+
+/***
+ * A pool of scratch arrays used by the frame path (NV21 byte arrays and RGB int arrays) bucketed by length.
+ * The pool holds at most a fixed number of bytes; arrays released beyond the budget are left to the garbage collector.
+ */
+
+public class ScratchArrayPool {
+    private final long maxBytes;
+    private final SparseArray<ArrayDeque<byte[]>> byteBuckets = new SparseArray<>();
+    private final SparseArray<ArrayDeque<int[]>> intBuckets = new SparseArray<>();
+    private long pooledBytes;
+    private long hits;
+    private long misses;
+
+    /***
+     * Constructor to create a scratch array pool
+     * @param maxBytes the maximum number of bytes held by idle arrays in the pool
+     */
+    public ScratchArrayPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /***
+     * Method to lease a byte array of exactly the given length
+     * @param length the array length
+     * @return a byte array whose contents are undefined
+     */
+    public synchronized byte[] leaseBytes(int length) {
+        ArrayDeque<byte[]> bucket = byteBuckets.get(length);
+        byte[] array = bucket != null ? bucket.pollLast() : null;
+
+        if (array != null) {
+            pooledBytes -= length;
+            hits++;
+            return array;
+        }
+
+        misses++;
+        return new byte[length];
+    }
+
+    /***
+     * Method to lease an int array of exactly the given length
+     * @param length the array length
+     * @return an int array whose contents are undefined
+     */
+    public synchronized int[] leaseInts(int length) {
+        ArrayDeque<int[]> bucket = intBuckets.get(length);
+        int[] array = bucket != null ? bucket.pollLast() : null;
+
+        if (array != null) {
+            pooledBytes -= 4L * length;
+            hits++;
+            return array;
+        }
+
+        misses++;
+        return new int[length];
+    }
+
+    /***
+     * Method to return a leased byte array to the pool
+     * @param array the array to return
+     */
+    public synchronized void release(byte[] array) {
+        if (array == null || pooledBytes + array.length > maxBytes) return;
+
+        ArrayDeque<byte[]> bucket = byteBuckets.get(array.length);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            byteBuckets.put(array.length, bucket);
+        }
+        bucket.addLast(array);
+        pooledBytes += array.length;
+    }
+
+    /***
+     * Method to return a leased int array to the pool
+     * @param array the array to return
+     */
+    public synchronized void release(int[] array) {
+        if (array == null || pooledBytes + 4L * array.length > maxBytes) return;
+
+        ArrayDeque<int[]> bucket = intBuckets.get(array.length);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            intBuckets.put(array.length, bucket);
+        }
+        bucket.addLast(array);
+        pooledBytes += 4L * array.length;
+    }
+
+    /***
+     * Method to get the fraction of leases served from the pool
+     * @return the hit rate between 0 and 1
+     */
+    public synchronized float getHitRate() {
+        long leases = hits + misses;
+        return leases == 0 ? 0.0f : (float) hits / leases;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * A reference counted copy of a frame for classifiers which keep working on a frame after topKPredictions has
+ * returned, e.g. ensemble members which missed the deadline. The frame passed to topKPredictions goes back to
+ * the frame converter's pool as soon as the call returns, so it must not be read afterwards; the copy is leased
+ * from the classifier's own pool and returned to it once every holder has released it.
+ */
+
+public class SharedFrame {
+    private final BitmapPool pool;
+    private final Bitmap bitmap;
+    private final AtomicInteger references;
+
+    /***
+     * Constructor to wrap a leased bitmap
+     * @param pool the pool the bitmap was leased from
+     * @param bitmap the bitmap
+     * @param references the number of holders which will release the frame
+     */
+    private SharedFrame(BitmapPool pool, Bitmap bitmap, int references) {
+        this.pool = pool;
+        this.bitmap = bitmap;
+        this.references = new AtomicInteger(references);
+    }
+
+    /***
+     * Method to copy a frame into a bitmap leased from a pool
+     * @param source the frame to copy
+     * @param pool the pool to lease the copy from
+     * @param references the number of holders which will release the copy
+     * @return the shared copy
+     */
+    public static SharedFrame copyOf(Bitmap source, BitmapPool pool, int references) {
+        Bitmap copy = pool.lease(source.getWidth(), source.getHeight(), Bitmap.Config.ARGB_8888);
+        new Canvas(copy).drawBitmap(source, 0, 0, null);
+        return new SharedFrame(pool, copy, references);
+    }
+
+    /***
+     * Method to get the copied frame
+     * @return the bitmap, valid until this holder calls release()
+     */
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    /***
+     * Method to release one holder's reference, returning the copy to the pool after the last one
+     */
+    public void release() {
+        if (references.decrementAndGet() == 0) pool.release(bitmap);
+    }
+}
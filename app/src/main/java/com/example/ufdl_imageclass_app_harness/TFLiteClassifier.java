@@ -3,51 +3,60 @@ package com.example.ufdl_imageclass_app_harness;
 import android.content.Context;
 import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
-import android.util.Log;
+import android.graphics.Rect;
+import android.os.SystemClock;
 
 import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
-import org.tensorflow.lite.support.common.TensorProcessor;
-import org.tensorflow.lite.support.common.ops.NormalizeOp;
-import org.tensorflow.lite.support.image.ImageProcessor;
-import org.tensorflow.lite.support.image.TensorImage;
-import org.tensorflow.lite.support.image.ops.ResizeOp;
-import org.tensorflow.lite.support.image.ops.ResizeWithCropOrPadOp;
-import org.tensorflow.lite.support.image.ops.Rot90Op;
-import org.tensorflow.lite.support.label.TensorLabel;
-import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
+import org.tensorflow.lite.Tensor;
+
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class TFLiteClassifier extends Classifier {
 
     /***
      * Pre-processing normalization parameters
      */
-    private static float IMAGE_MEAN;
-    private static float IMAGE_STD;
+    private final float IMAGE_MEAN;
+    private final float IMAGE_STD;
+
+    /***
+     * Post-processing normalization parameters
+     */
+    private final float PROBABILITY_MEAN;
+    private final float PROBABILITY_STD;
 
     /***
-     * Image size along the x axis.
+     * The memory mapped model, shared by the interpreters of every input resolution.
      */
-    private final int imageResizeX;
+    private final MappedByteBuffer classifierModel;
 
     /***
-     * Image size along the y axis.
+     * Picks the input resolution (image size along the x and y axis) for each frame.
      */
-    private final int imageResizeY;
+    private final ResolutionScaler resolutionScaler;
 
     /***
      * Labels corresponding to the output of the vision model.
      */
-    private final List<String> labels;
+    private final String[] labels;
+
+    /***
+     * Class indices of the label subset (null for all classes) and whether to renormalise over just those classes.
+     */
+    private final int[] labelSubset;
+    private final boolean renormaliseSubset;
 
     /***
      * An instance of the driver class to run model inference with Tensorflow Lite.
@@ -55,19 +64,47 @@ public class TFLiteClassifier extends Classifier {
     private final Interpreter tensorClassifier;
 
     /***
-     * Input image TensorBuffer.
+     * Options shared by every interpreter, holding the thread count and XNNPACK setting of the execution plan.
+     */
+    private final Interpreter.Options interpreterOptions = new Interpreter.Options();
+
+    /***
+     * Layouts of the input and output tensors read from the model, and the kernel writing the input tensor.
      */
-    private TensorImage inputImageBuffer;
+    private final TensorLayout inputLayout;
+    private final TensorLayout outputLayout;
+    private final boolean outputQuantized;
+    private final TensorPreprocessor preprocessor;
+    private final Rect frameRegion = new Rect();
 
     /***
-     * Output probability TensorBuffer.
+     * Interpreters and direct input buffers cached per input resolution so switching resolution costs nothing once warm.
      */
-    private final TensorBuffer probabilityImageBuffer;
+    private final Map<InputResolution, Interpreter> interpreters = new HashMap<>();
+    private final Map<InputResolution, TensorLayout> inputLayouts = new HashMap<>();
+    private final Map<InputResolution, ByteBuffer> inputBuffers = new HashMap<>();
 
     /***
-     * Processor to apply post processing of the output probability.
+     * Resolutions which have run once. The first run at a resolution includes allocating the interpreter's
+     * tensors, so it is left out of the latency the resolution scaler sees.
      */
-    private final TensorProcessor probabilityProcessor;
+    private final Set<InputResolution> warmResolutions = new HashSet<>();
+
+    /***
+     * Direct output buffer and the scores read from it.
+     */
+    private final ByteBuffer outputBuffer;
+    private final float[] scores;
+
+    /***
+     * Batched interpreter and buffers for multi-crop classification, rebuilt when the batch size or resolution changes.
+     */
+    private InputResolution batchResolution;
+    private TensorLayout batchLayout;
+    private TensorLayout batchOutputLayout;
+    private Interpreter batchInterpreter;
+    private ByteBuffer batchInput;
+    private ByteBuffer batchOutput;
 
 
     /***
@@ -77,44 +114,87 @@ public class TFLiteClassifier extends Classifier {
      * @throws IOException if model fails to load from assets
      */
     public TFLiteClassifier(Context context, ClassifierDetails details) throws IOException {
+        this(context, details, null);
+    }
+
+    /***
+     * Creates a TensorFlow Lite classifier run according to an execution plan
+     * @param context the context
+     * @param details the required details to create classifier including model name, width, height and classes
+     * @param plan the execution plan or null to use the defaults
+     * @throws IOException if model fails to load from assets
+     */
+    public TFLiteClassifier(Context context, ClassifierDetails details, ExecutionPlan plan) throws IOException {
         super();
-        MappedByteBuffer classifierModel = FileUtil.loadModelFile(context, details.getName());
-        labels = Arrays.asList(details.getClasses());
-        tensorClassifier = new Interpreter(classifierModel, null);
+        if (plan != null) {
+            if (plan.getNumThreads() > 0) interpreterOptions.setNumThreads(plan.getNumThreads());
+            interpreterOptions.setUseXNNPACK(plan.getUseXnnpack());
+        }
+        classifierModel = FileUtil.loadModelFile(context, details.getName());
+        labels = details.getClasses();
+        labelSubset = resolveLabelSubset(labels, details.getLabelSubset());
+        renormaliseSubset = details.getRenormaliseSubset();
+        tensorClassifier = new Interpreter(classifierModel, interpreterOptions);
 
         float[] preProcessingNormalizationParams = details.getPreProcessingNormalizationParams();
         float[] postProcessingNormalizationParams = details.getPostProcessingNormalizationParams();
 
-        // set the normalization parameters */
-        IMAGE_MEAN = preProcessingNormalizationParams[0];
-        IMAGE_STD = preProcessingNormalizationParams[1];
-
-        //Post-processing normalization parameters.
-        float PROBABILITY_MEAN = postProcessingNormalizationParams[0];
-        float PROBABILITY_STD = postProcessingNormalizationParams[1];
+        // Reads type, shape and quantization of input and output tensors, respectively.
+        Tensor inputTensor = tensorClassifier.getInputTensor(0);
+        Tensor outputTensor = tensorClassifier.getOutputTensor(0);
 
-        // Reads type and shape of input and output tensors, respectively.
-        int imageTensorIndex = 0; // input
-        int probabilityTensorIndex = 0;// output
+        // The JSON normalization parameters follow the TensorFlow Lite support library convention of mapping
+        // pixels (and outputs) to raw tensor values, so the model's quantization only applies without them.
+        boolean inputQuantized = preProcessingNormalizationParams == null;
+        outputQuantized = postProcessingNormalizationParams == null;
+        inputLayout = layoutOf(inputTensor, inputQuantized);
+        outputLayout = layoutOf(outputTensor, outputQuantized);
 
-        int[] inputImageShape = tensorClassifier.getInputTensor(imageTensorIndex).shape();
-        DataType inputDataType = tensorClassifier.getInputTensor(imageTensorIndex).dataType();
+        // set the normalization parameters */
+        if (preProcessingNormalizationParams != null) {
+            IMAGE_MEAN = preProcessingNormalizationParams[0];
+            IMAGE_STD = preProcessingNormalizationParams[1];
+        } else {
+            IMAGE_MEAN = inputLayout.isQuantized() ? 0.0f : 127.5f;
+            IMAGE_STD = inputLayout.isQuantized() ? 1.0f : 127.5f;
+        }
 
-        int[] outputImageShape = tensorClassifier.getOutputTensor(probabilityTensorIndex).shape();
-        DataType outputDataType = tensorClassifier.getOutputTensor(probabilityTensorIndex).dataType();
+        //Post-processing normalization parameters.
+        PROBABILITY_MEAN = postProcessingNormalizationParams != null ? postProcessingNormalizationParams[0] : 0.0f;
+        PROBABILITY_STD = postProcessingNormalizationParams != null ? postProcessingNormalizationParams[1] : 1.0f;
 
-        imageResizeY = inputImageShape[1];
-        imageResizeX = inputImageShape[2];
+        preprocessor = TensorPreprocessor.uniform(IMAGE_MEAN, IMAGE_STD);
+        outputBuffer = outputLayout.allocate();
+        scores = new float[outputLayout.getElementsPerItem()];
 
-        // Creates the input tensor.
-        inputImageBuffer = new TensorImage(inputDataType);
+        InputResolution nativeResolution = new InputResolution(inputLayout.getWidth(), inputLayout.getHeight());
+        interpreters.put(nativeResolution, tensorClassifier);
 
-        // Creates the output tensor and its processor.
-        probabilityImageBuffer = TensorBuffer.createFixedSize(outputImageShape, outputDataType);
+        List<InputResolution> resolutions = details.getResolutions();
+        if (plan != null && plan.getResolution() != null) {
+            resolutions = Collections.singletonList(plan.getResolution());
+        } else if (resolutions == null || resolutions.isEmpty()) {
+            resolutions = Collections.singletonList(nativeResolution);
+        }
+        resolutionScaler = new ResolutionScaler(resolutions, details.getLatencyBudgetMs());
+    }
 
-        // Creates the post processor for the output probability.
-        probabilityProcessor = new TensorProcessor.Builder().add(new NormalizeOp(PROBABILITY_MEAN, PROBABILITY_STD))
-                .build();
+    /***
+     * Method to describe an interpreter tensor as a TensorLayout
+     * @param tensor the interpreter tensor
+     * @param quantized true to use the tensor's quantization parameters, false to treat raw values as real values
+     * @return the layout of the tensor
+     */
+    private static TensorLayout layoutOf(Tensor tensor, boolean quantized) {
+        TensorLayout.DataType dataType;
+        if (tensor.dataType() == DataType.UINT8) dataType = TensorLayout.DataType.UINT8;
+        else if (tensor.dataType() == DataType.INT8) dataType = TensorLayout.DataType.INT8;
+        else dataType = TensorLayout.DataType.FLOAT32;
+
+        Tensor.QuantizationParams quantization = tensor.quantizationParams();
+        boolean useQuantization = quantized && dataType != TensorLayout.DataType.FLOAT32 && quantization.getScale() != 0.0f;
+        return new TensorLayout(TensorLayout.Order.NHWC, dataType, tensor.shape(),
+                useQuantization ? quantization.getScale() : 1.0f, useQuantization ? quantization.getZeroPoint() : 0);
     }
 
     /***
@@ -139,47 +219,208 @@ public class TFLiteClassifier extends Classifier {
     /***
      * method runs the inference and returns the classification result
      * @param bitmap the bitmap of the image
-     * @param k the number of prediction results to return
+     * @param k the number of prediction results to return, at most 3
      * @return classification results
      */
     public List<Prediction> topKPredictions(final Bitmap bitmap, int k) {
-        List<Prediction> recognitions = new ArrayList<>();
+        run(bitmap);
+
+        // the post-processing normalization is linear, so the ranking is taken on the raw scores and only the
+        // top predictions are normalized; only the classes of the label subset are read at all
+        readScores(outputBuffer, outputLayout, 0, scores, labelSubset);
+        int[] indices = topK(scores, labelSubset);
+        float total = renormaliseSubset ? normalizedSum(scores) : 1.0f;
+
+        List<Prediction> recognitions = new ArrayList<>(k);
+        for (int i = 0; i < k && i < indices.length && indices[i] >= 0; i++) {
+            int index = indices[i];
+            recognitions.add(new Prediction(labels[index], (scores[index] - PROBABILITY_MEAN) / PROBABILITY_STD / total));
+        }
+        return recognitions;
+    }
 
-        inputImageBuffer = loadImage(bitmap);
-        tensorClassifier.run(inputImageBuffer.getBuffer(), probabilityImageBuffer.getBuffer().rewind());
 
-        // Gets the map of label and probability.
-        Map<String, Float> labelledProbability = new TensorLabel(labels,
-                probabilityProcessor.process(probabilityImageBuffer)).getMapWithFloatValue();
+    /***
+     * Method to get the normalized probability of every class, renormalised over the label subset if requested
+     * @param bitmap the bitmap of the image
+     * @return the probabilities aligned with getClasses()
+     */
+    @Override
+    public float[] classProbabilities(Bitmap bitmap) {
+        run(bitmap);
+
+        float[] probabilities = readScores(outputBuffer, outputLayout, 0, new float[scores.length], labelSubset);
+        float total = renormaliseSubset ? normalizedSum(probabilities) : 1.0f;
+        int count = labelSubset == null ? probabilities.length : labelSubset.length;
+        for (int n = 0; n < count; n++) {
+            int i = labelSubset == null ? n : labelSubset[n];
+            probabilities[i] = (probabilities[i] - PROBABILITY_MEAN) / PROBABILITY_STD / total;
+        }
+        return probabilities;
+    }
 
-        for (Map.Entry<String, Float> entry : labelledProbability.entrySet()) {
-            recognitions.add(new Prediction(entry.getKey(), entry.getValue()));
+    /***
+     * Method to run the model on a bitmap at the current input resolution, leaving its output in the output
+     * buffer, and adjust the resolution to the latency budget
+     * @param bitmap the bitmap of the image
+     */
+    private void run(Bitmap bitmap) {
+        InputResolution resolution = resolutionScaler.getResolution();
+        Interpreter interpreter = getInterpreter(resolution);
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        ByteBuffer input = loadImage(bitmap, resolution);
+        outputBuffer.rewind();
+        interpreter.run(input, outputBuffer);
+        if (!warmResolutions.add(resolution)) {
+            resolutionScaler.record((SystemClock.elapsedRealtimeNanos() - start) / 1e6f);
         }
+    }
 
-        // Find the best classifications by sorting predicitons based on confidence
-        Collections.sort(recognitions);
-        return recognitions.subList(0, k);
+    /***
+     * Method to classify several crops of a bitmap in a single batched run at the current input resolution
+     * @param bitmap the bitmap of the image
+     * @param crops the regions of the bitmap to classify
+     * @return the normalised scores of each crop
+     */
+    @Override
+    public float[][] batchScores(Bitmap bitmap, Rect[] crops) {
+        InputResolution resolution = resolutionScaler.getResolution();
+        int width = resolution.getWidth();
+        int height = resolution.getHeight();
+
+        // the batch's cost is the frame's cost, so it drives the resolution unless the batch was just rebuilt
+        boolean warm = batchInterpreter != null && resolution.equals(batchResolution) && batchLayout.getBatch() == crops.length;
+        if (!warm) {
+            if (batchInterpreter != null) batchInterpreter.close();
+
+            batchLayout = inputLayout.resize(crops.length, width, height);
+            batchInterpreter = new Interpreter(classifierModel, interpreterOptions);
+            batchInterpreter.resizeInput(0, batchLayout.getShape());
+            batchInterpreter.allocateTensors();
+            batchInput = batchLayout.allocate();
+            batchOutputLayout = layoutOf(batchInterpreter.getOutputTensor(0), outputQuantized);
+            batchOutput = batchOutputLayout.allocate();
+            batchResolution = resolution;
+        }
+
+        // each crop is resampled straight into its slot of the batch, from a single read of the frame's pixels
+        long start = SystemClock.elapsedRealtimeNanos();
+        preprocessor.writeBatch(bitmap, crops, true, batchLayout, batchInput);
+        batchInput.rewind();
+        batchOutput.rewind();
+        batchInterpreter.run(batchInput, batchOutput);
+        if (warm) resolutionScaler.record((SystemClock.elapsedRealtimeNanos() - start) / 1e6f);
+
+        float[][] scores = new float[crops.length][batchOutputLayout.getElementsPerItem()];
+        for (int i = 0; i < crops.length; i++) {
+            readScores(batchOutput, batchOutputLayout, i, scores[i], labelSubset);
+            float total = renormaliseSubset ? normalizedSum(scores[i]) : 1.0f;
+            int count = labelSubset == null ? scores[i].length : labelSubset.length;
+            for (int n = 0; n < count; n++) {
+                int j = labelSubset == null ? n : labelSubset[n];
+                scores[i][j] = (scores[i][j] - PROBABILITY_MEAN) / PROBABILITY_STD / total;
+            }
+        }
+        return scores;
     }
 
+    /***
+     * Method to sum the normalized scores of the label subset, to renormalise the confidences over the subset
+     * @param scores the raw scores, only read at the subset's indices
+     * @return the sum of the normalized scores, or 1 if it isn't positive
+     */
+    private float normalizedSum(float[] scores) {
+        int count = labelSubset == null ? scores.length : labelSubset.length;
+        float sum = (subsetSum(scores, labelSubset) - count * PROBABILITY_MEAN) / PROBABILITY_STD;
+        return sum > 0.0f ? sum : 1.0f;
+    }
 
     /***
-     * loads the image into tensor input buffer and apply pre processing steps
+     * Method to get the set of classes the model was trained on
+     * @return String array of classes (image labels)
+     */
+    @Override
+    public String[] getClasses() {
+        return labels;
+    }
+
+    /***
+     * Method to get the indices of the classes the predictions are restricted to
+     * @return the ascending class indices, or null if every class is predicted
+     */
+    @Override
+    public int[] getLabelSubset() {
+        return labelSubset;
+    }
+
+    /***
+     * Method to get the interpreter for an input resolution, resizing the input tensor of a new interpreter
+     * on first use. Each resolution keeps its own interpreter so its tensors stay allocated.
+     * @param resolution the input resolution
+     * @return the interpreter for the resolution
+     */
+    private Interpreter getInterpreter(InputResolution resolution) {
+        Interpreter interpreter = interpreters.get(resolution);
+        if (interpreter == null) {
+            interpreter = new Interpreter(classifierModel, interpreterOptions);
+            interpreter.resizeInput(0, inputLayout.resize(1, resolution.getWidth(), resolution.getHeight()).getShape());
+            interpreter.allocateTensors();
+            interpreters.put(resolution, interpreter);
+        }
+        return interpreter;
+    }
+
+    /***
+     * loads the centre square of the image into the direct input buffer of a resolution, resized with nearest
+     * neighbour sampling and normalized
      * @param bitmap the bitmap to be loaded
-     * @return the image loaded tensor input buffer
-     */
-    private TensorImage loadImage(Bitmap bitmap) {
-        // Loads bitmap into a TensorImage.
-        inputImageBuffer.load(bitmap);
-        int cropSize = Math.min(bitmap.getWidth(), bitmap.getHeight());
-
-        // Creates processor for the TensorImage.
-        // pre processing steps are applied here
-        ImageProcessor imageProcessor = new ImageProcessor.Builder()
-                .add(new ResizeWithCropOrPadOp(cropSize, cropSize))
-                .add(new ResizeOp(imageResizeY, imageResizeX, ResizeOp.ResizeMethod.NEAREST_NEIGHBOR))
-                .add(new NormalizeOp(IMAGE_MEAN, IMAGE_STD))
-                .build();
-        return imageProcessor.process(inputImageBuffer);
+     * @param resolution the input resolution to resize the image to
+     * @return the input buffer
+     */
+    private ByteBuffer loadImage(Bitmap bitmap, InputResolution resolution) {
+        ByteBuffer input = inputBuffers.get(resolution);
+        if (input == null) {
+            TensorLayout layout = inputLayout.resize(1, resolution.getWidth(), resolution.getHeight());
+            input = layout.allocate();
+            inputLayouts.put(resolution, layout);
+            inputBuffers.put(resolution, input);
+        }
+
+        preprocessor.write(bitmap, TensorPreprocessor.centreSquare(bitmap, frameRegion), false, inputLayouts.get(resolution), input, 0);
+        input.rewind();
+        return input;
+    }
+
+    /***
+     * Method to get the longest side of the largest input resolution the model is run at
+     * @return the largest input side in pixels
+     */
+    @Override
+    public int getInputSize() {
+        return resolutionScaler.getMaxInputSize();
+    }
+
+    /***
+     * Method to get the current input resolution and latency for display
+     * @return the formatted statistics
+     */
+    @Override
+    public String getStatistics() {
+        return resolutionScaler.describe();
+    }
+
+    /***
+     * Method to close every interpreter, releasing their native memory
+     */
+    @Override
+    public void close() {
+        for (Interpreter interpreter : interpreters.values()) interpreter.close();
+        interpreters.clear();
+        if (batchInterpreter != null) {
+            batchInterpreter.close();
+            batchInterpreter = null;
+        }
     }
 
     /***
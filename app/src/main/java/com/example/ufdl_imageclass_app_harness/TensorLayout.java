@@ -0,0 +1,197 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/***
+ * A class to describe the memory layout of a model's input or output tensor, independently of the engine
+ * running the model: the dimension order of image tensors, the element type and, for quantized tensors, the
+ * scale and zero point mapping raw values to real values (real = (raw - zeroPoint) * scale).
+ */
+
+public class TensorLayout {
+
+    /***
+     * The dimension order of an image tensor
+     */
+    public enum Order {
+        NHWC,   //TensorFlow Lite
+        NCHW    //PyTorch
+    }
+
+    /***
+     * The element type of a tensor
+     */
+    public enum DataType {
+        FLOAT32(4),
+        UINT8(1),
+        INT8(1);
+
+        private final int bytes;
+
+        DataType(int bytes) {
+            this.bytes = bytes;
+        }
+
+        /***
+         * Method to get the size of an element
+         * @return the element size in bytes
+         */
+        public int getBytes() {
+            return bytes;
+        }
+    }
+
+    private final Order order;
+    private final DataType dataType;
+    private final int[] shape;
+    private final float scale;
+    private final int zeroPoint;
+
+    /***
+     * Constructor to create a tensor layout
+     * @param order the dimension order, which only matters for image tensors
+     * @param dataType the element type
+     * @param shape the tensor shape, batch first
+     * @param scale the quantization scale, 1 for unquantized tensors
+     * @param zeroPoint the quantization zero point, 0 for unquantized tensors
+     */
+    public TensorLayout(Order order, DataType dataType, int[] shape, float scale, int zeroPoint) {
+        this.order = order;
+        this.dataType = dataType;
+        this.shape = shape.clone();
+        this.scale = scale;
+        this.zeroPoint = zeroPoint;
+    }
+
+    /***
+     * Method to get a copy of this layout for a different batch size and image size
+     * @param batch the batch size
+     * @param width the image width
+     * @param height the image height
+     * @return the resized layout
+     */
+    public TensorLayout resize(int batch, int width, int height) {
+        int[] resized = shape.clone();
+        resized[0] = batch;
+        resized[order == Order.NHWC ? 1 : 2] = height;
+        resized[order == Order.NHWC ? 2 : 3] = width;
+        return new TensorLayout(order, dataType, resized, scale, zeroPoint);
+    }
+
+    /***
+     * Method to allocate a direct, native-order buffer the engine can read or write in place
+     * @return the tensor buffer
+     */
+    public ByteBuffer allocate() {
+        return ByteBuffer.allocateDirect(getBytes()).order(ByteOrder.nativeOrder());
+    }
+
+    /***
+     * Method to get the dimension order of an image tensor
+     * @return NHWC or NCHW
+     */
+    public Order getOrder() {
+        return order;
+    }
+
+    /***
+     * Method to get the element type
+     * @return the data type
+     */
+    public DataType getDataType() {
+        return dataType;
+    }
+
+    /***
+     * Method to get the tensor shape
+     * @return a copy of the shape, batch first
+     */
+    public int[] getShape() {
+        return shape.clone();
+    }
+
+    /***
+     * Method to get the batch size
+     * @return the first dimension of the shape
+     */
+    public int getBatch() {
+        return shape[0];
+    }
+
+    /***
+     * Method to get the height of an image tensor
+     * @return the image height
+     */
+    public int getHeight() {
+        return shape[order == Order.NHWC ? 1 : 2];
+    }
+
+    /***
+     * Method to get the width of an image tensor
+     * @return the image width
+     */
+    public int getWidth() {
+        return shape[order == Order.NHWC ? 2 : 3];
+    }
+
+    /***
+     * Method to get the number of channels of an image tensor
+     * @return the channel count
+     */
+    public int getChannels() {
+        return shape[order == Order.NHWC ? 3 : 1];
+    }
+
+    /***
+     * Method to get the quantization scale
+     * @return the scale, 1 for unquantized tensors
+     */
+    public float getScale() {
+        return scale;
+    }
+
+    /***
+     * Method to get the quantization zero point
+     * @return the zero point, 0 for unquantized tensors
+     */
+    public int getZeroPoint() {
+        return zeroPoint;
+    }
+
+    /***
+     * Method to check whether the elements are quantized integers
+     * @return true for UINT8 and INT8 tensors
+     */
+    public boolean isQuantized() {
+        return dataType != DataType.FLOAT32;
+    }
+
+    /***
+     * Method to get the number of elements of a single batch entry
+     * @return the element count
+     */
+    public int getElementsPerItem() {
+        int elements = 1;
+        for (int i = 1; i < shape.length; i++) elements *= shape[i];
+        return elements;
+    }
+
+    /***
+     * Method to get the size of the tensor
+     * @return the size in bytes
+     */
+    public int getBytes() {
+        return shape[0] * getElementsPerItem() * dataType.getBytes();
+    }
+
+    /***
+     * Method to describe the layout for logging
+     * @return the formatted description
+     */
+    @Override
+    public String toString() {
+        return order + " " + dataType + " " + Arrays.toString(shape) + (isQuantized() ? " scale " + scale + " zero " + zeroPoint : "");
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/***
+ * The preprocessing kernel shared by every engine. It samples a region of a bitmap at the input size of a
+ * tensor (nearest neighbour or bilinear), normalises each channel with (pixel - mean) / std, quantizes the
+ * result for integer tensors and writes it straight into the engine's input buffer in NHWC or NCHW order, so
+ * no intermediate bitmap, TensorImage or float array is created per frame. The rows are written in parallel
+ * stripes by the shared ImageKernels. Scratch arrays are reused between calls, so a preprocessor must only be
+ * used by one thread at a time.
+ */
+
+public class TensorPreprocessor {
+    private final float[] mean;
+    private final float[] inverseStd;
+
+    private final ImageKernels kernels;
+
+    //scratch state reused between calls
+    private int[] pixels = new int[0];
+    private final ImageKernels.ColumnMap columns = new ImageKernels.ColumnMap();
+    private ByteBuffer floatSource;
+    private FloatBuffer floatView;
+
+    /***
+     * Constructor to create a preprocessor
+     * @param mean the per-channel (RGB) mean in pixel units (0-255)
+     * @param std the per-channel (RGB) standard deviation in pixel units
+     */
+    public TensorPreprocessor(float[] mean, float[] std) {
+        this.mean = mean.clone();
+        this.inverseStd = new float[]{1.0f / std[0], 1.0f / std[1], 1.0f / std[2]};
+        this.kernels = ImageKernels.getDefault();
+    }
+
+    /***
+     * Method to create a preprocessor which uses the same mean and standard deviation for every channel
+     * @param mean the mean in pixel units (0-255)
+     * @param std the standard deviation in pixel units
+     * @return the preprocessor
+     */
+    public static TensorPreprocessor uniform(float mean, float std) {
+        return new TensorPreprocessor(new float[]{mean, mean, mean}, new float[]{std, std, std});
+    }
+
+    /***
+     * Method to get the largest square in the centre of a bitmap
+     * @param bitmap the bitmap
+     * @param region the rectangle to set to the centre square
+     * @return the region
+     */
+    public static Rect centreSquare(Bitmap bitmap, Rect region) {
+        int size = Math.min(bitmap.getWidth(), bitmap.getHeight());
+        int left = (bitmap.getWidth() - size) / 2;
+        int top = (bitmap.getHeight() - size) / 2;
+        region.set(left, top, left + size, top + size);
+        return region;
+    }
+
+    /***
+     * Method to write a region of a bitmap into one batch entry of a tensor
+     * @param source the source bitmap
+     * @param region the region of the bitmap to sample, scaled to the tensor's width and height
+     * @param bilinear true for bilinear sampling, false for nearest neighbour
+     * @param layout the layout of the tensor
+     * @param tensor the direct buffer holding the tensor
+     * @param batchIndex the batch entry to write
+     */
+    public void write(Bitmap source, Rect region, boolean bilinear, TensorLayout layout, ByteBuffer tensor, int batchIndex) {
+        int regionWidth = region.width();
+        int regionHeight = region.height();
+
+        if (pixels.length < regionWidth * regionHeight) pixels = new int[regionWidth * regionHeight];
+        source.getPixels(pixels, 0, regionWidth, region.left, region.top, regionWidth, regionHeight);
+        normalise(0, 0, regionWidth, regionWidth, regionHeight, bilinear, layout, tensor, batchIndex);
+    }
+
+    /***
+     * Method to write several regions of a bitmap into consecutive batch entries of a tensor. The pixels covering
+     * all the regions are read from the bitmap once, and each region is sampled from them in place, so
+     * overlapping crops don't read the same pixels again.
+     * @param source the source bitmap
+     * @param regions the regions of the bitmap to sample, each scaled to the tensor's width and height
+     * @param bilinear true for bilinear sampling, false for nearest neighbour
+     * @param layout the layout of the tensor, with a batch entry for each region
+     * @param tensor the direct buffer holding the tensor
+     */
+    public void writeBatch(Bitmap source, Rect[] regions, boolean bilinear, TensorLayout layout, ByteBuffer tensor) {
+        int left = Integer.MAX_VALUE, top = Integer.MAX_VALUE, right = Integer.MIN_VALUE, bottom = Integer.MIN_VALUE;
+        for (Rect region : regions) {
+            left = Math.min(left, region.left);
+            top = Math.min(top, region.top);
+            right = Math.max(right, region.right);
+            bottom = Math.max(bottom, region.bottom);
+        }
+        int boundsWidth = right - left;
+        int boundsHeight = bottom - top;
+
+        if (pixels.length < boundsWidth * boundsHeight) pixels = new int[boundsWidth * boundsHeight];
+        source.getPixels(pixels, 0, boundsWidth, left, top, boundsWidth, boundsHeight);
+        for (int i = 0; i < regions.length; i++) {
+            normalise(regions[i].left - left, regions[i].top - top, boundsWidth, regions[i].width(), regions[i].height(),
+                    bilinear, layout, tensor, i);
+        }
+    }
+
+    /***
+     * Method to sample a region of the scratch pixels into one batch entry of a tensor
+     * @param left the left edge of the region in the scratch pixels
+     * @param top the top edge of the region in the scratch pixels
+     * @param stride the row stride of the scratch pixels
+     * @param regionWidth the width of the region
+     * @param regionHeight the height of the region
+     * @param bilinear true for bilinear sampling, false for nearest neighbour
+     * @param layout the layout of the tensor
+     * @param tensor the direct buffer holding the tensor
+     * @param batchIndex the batch entry to write
+     */
+    private void normalise(int left, int top, int stride, int regionWidth, int regionHeight, boolean bilinear,
+                           TensorLayout layout, ByteBuffer tensor, int batchIndex) {
+        columns.set(left, regionWidth, layout.getWidth(), bilinear);
+        kernels.normalise(pixels, stride, columns, top, regionHeight, mean, inverseStd, layout, tensor,
+                layout.isQuantized() ? null : floatView(tensor), batchIndex);
+    }
+
+    /***
+     * Method to get a float view of a tensor buffer, reused while the same buffer is written
+     * @param tensor the direct tensor buffer
+     * @return the float view
+     */
+    private FloatBuffer floatView(ByteBuffer tensor) {
+        if (tensor != floatSource) {
+            floatSource = tensor;
+            tensor.clear();
+            floatView = tensor.asFloatBuffer();
+        }
+        return floatView;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/***
+ * Tests that recordings written by FrameWriter are read back by FrameReplayer, across mapped segments and with
+ * the recorded plane strides.
+ */
+
+public class FrameReplayerTest {
+    private static final int YUV_420_888 = 0x23;
+    private static final int WIDTH = 6;
+    private static final int HEIGHT = 4;
+    private static final int Y_ROW_STRIDE = 8;
+    private static final int UV_ROW_STRIDE = 8;
+    private static final int UV_PIXEL_STRIDE = 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /***
+     * Method to write frames with padded YUV_420_888 planes whose samples encode the frame index and position
+     * @param file the recording file
+     * @param frames the number of frames
+     * @throws IOException if the recording cannot be written
+     */
+    private static void writeRecording(File file, int frames) throws IOException {
+        try (FrameWriter writer = new FrameWriter(file)) {
+            for (int frame = 0; frame < frames; frame++) {
+                byte[] y = new byte[Y_ROW_STRIDE * HEIGHT];
+                byte[] u = new byte[UV_ROW_STRIDE * HEIGHT / 2];
+                byte[] v = new byte[UV_ROW_STRIDE * HEIGHT / 2];
+                for (int row = 0; row < HEIGHT; row++) {
+                    for (int x = 0; x < WIDTH; x++) y[row * Y_ROW_STRIDE + x] = (byte) (frame * 50 + row * WIDTH + x);
+                }
+                for (int row = 0; row < HEIGHT / 2; row++) {
+                    for (int x = 0; x < WIDTH / 2; x++) {
+                        u[row * UV_ROW_STRIDE + x * UV_PIXEL_STRIDE] = (byte) (100 + frame + row * WIDTH + x);
+                        v[row * UV_ROW_STRIDE + x * UV_PIXEL_STRIDE] = (byte) (200 + frame + row * WIDTH + x);
+                    }
+                }
+
+                ByteBuffer[] planes = {ByteBuffer.wrap(y), ByteBuffer.wrap(u), ByteBuffer.wrap(v)};
+                writer.write(1000L + frame, WIDTH, HEIGHT, 90, 270, YUV_420_888, planes,
+                        new int[]{Y_ROW_STRIDE, UV_ROW_STRIDE, UV_ROW_STRIDE}, new int[]{1, UV_PIXEL_STRIDE, UV_PIXEL_STRIDE}, 3);
+            }
+            assertEquals(frames, writer.getFrames());
+        }
+    }
+
+    /***
+     * Method to check a replayed frame against the frame written by writeRecording
+     * @param frame the replayed frame
+     * @param index the frame index
+     */
+    private static void assertFrame(RecordedFrame frame, int index) {
+        assertNotNull(frame);
+        assertEquals(1000L + index, frame.getTime());
+        assertEquals(WIDTH, frame.getWidth());
+        assertEquals(HEIGHT, frame.getHeight());
+        assertEquals(90, frame.getRotationToUser());
+        assertEquals(270, frame.getRotationToView());
+        assertEquals(YUV_420_888, frame.getFormat());
+        assertArrayEquals(new int[]{Y_ROW_STRIDE, UV_ROW_STRIDE, UV_ROW_STRIDE}, frame.getRowStrides());
+        assertArrayEquals(new int[]{1, UV_PIXEL_STRIDE, UV_PIXEL_STRIDE}, frame.getPixelStrides());
+
+        ByteBuffer[] planes = frame.getPlanes();
+        byte[] nv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+        new ImageKernels(1).yuv420ToNv21(planes[0], planes[1], planes[2], frame.getRowStrides()[0],
+                frame.getRowStrides()[1], frame.getPixelStrides()[1], WIDTH, HEIGHT, nv21);
+
+        byte[] expected = new byte[nv21.length];
+        for (int i = 0; i < WIDTH * HEIGHT; i++) expected[i] = (byte) (index * 50 + i);
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int x = 0; x < WIDTH / 2; x++) {
+                expected[WIDTH * HEIGHT + row * WIDTH + 2 * x] = (byte) (200 + index + row * WIDTH + x);
+                expected[WIDTH * HEIGHT + row * WIDTH + 2 * x + 1] = (byte) (100 + index + row * WIDTH + x);
+            }
+        }
+        assertArrayEquals(expected, nv21);
+    }
+
+    @Test
+    public void replaysEveryFrameInOrder() throws IOException {
+        File file = folder.newFile("frames");
+        writeRecording(file, 5);
+
+        try (FrameReplayer replayer = new FrameReplayer(file)) {
+            for (int i = 0; i < 5; i++) assertFrame(replayer.next(), i);
+            assertNull(replayer.next());
+
+            replayer.rewind();
+            assertFrame(replayer.next(), 0);
+        }
+    }
+
+    @Test
+    public void replaysAcrossSegments() throws IOException {
+        File file = folder.newFile("frames");
+        writeRecording(file, 7);
+
+        // segments smaller than a record force a new mapping for every frame
+        for (long segmentBytes : new long[]{1, 100, 250}) {
+            try (FrameReplayer replayer = new FrameReplayer(file, segmentBytes)) {
+                for (int i = 0; i < 7; i++) assertFrame(replayer.next(), i);
+                assertNull(replayer.next());
+            }
+        }
+    }
+
+    @Test
+    public void truncatedRecordEndsTheRecording() throws IOException {
+        File file = folder.newFile("frames");
+        writeRecording(file, 3);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        try (FrameReplayer replayer = new FrameReplayer(file, 100)) {
+            assertFrame(replayer.next(), 0);
+            assertFrame(replayer.next(), 1);
+            assertNull(replayer.next());
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        File file = folder.newFile("other");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("not a recording".getBytes("US-ASCII"));
+        }
+
+        try {
+            new FrameReplayer(file).close();
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            // not a frame recording
+        }
+    }
+}
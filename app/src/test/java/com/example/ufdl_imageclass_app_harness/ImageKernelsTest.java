@@ -0,0 +1,187 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/***
+ * Tests that the striped ImageKernels produce exactly the output of a single-threaded pass, on image sizes which
+ * don't divide evenly into stripes, and check the scalar path against values worked out by hand.
+ */
+
+public class ImageKernelsTest {
+    private static final int WIDTH = 97;
+    private static final int HEIGHT = 62;
+
+    //every image is split into stripes, however small
+    private final ImageKernels striped = new ImageKernels(4, 1);
+    private final ImageKernels scalar = new ImageKernels(1);
+    private final Random random = new Random(42);
+
+    @After
+    public void closeKernels() {
+        striped.close();
+        scalar.close();
+    }
+
+    /***
+     * Method to create random opaque ARGB pixels
+     * @param count the number of pixels
+     * @return the pixels
+     */
+    private int[] randomPixels(int count) {
+        int[] pixels = new int[count];
+        for (int i = 0; i < pixels.length; i++) pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        return pixels;
+    }
+
+    @Test
+    public void nv21ToArgbMatchesScalar() {
+        byte[] nv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+        random.nextBytes(nv21);
+        int[] expected = new int[WIDTH * HEIGHT];
+        int[] actual = new int[WIDTH * HEIGHT];
+
+        scalar.nv21ToArgb(nv21, WIDTH - 1, HEIGHT, expected);
+        striped.nv21ToArgb(nv21, WIDTH - 1, HEIGHT, actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void nv21ToArgbOfGreyIsGrey() {
+        byte[] nv21 = new byte[4 * 4 * 3 / 2];
+        Arrays.fill(nv21, (byte) 128);
+        int[] argb = new int[16];
+
+        striped.nv21ToArgb(nv21, 4, 4, argb);
+        for (int pixel : argb) assertEquals(0xFF808080, pixel);
+    }
+
+    @Test
+    public void yuv420ToNv21MatchesScalar() {
+        int width = WIDTH - 1;
+        int rowStride = width + 12;
+        ByteBuffer y = ByteBuffer.allocate(rowStride * HEIGHT);
+        ByteBuffer u = ByteBuffer.allocate(rowStride * HEIGHT / 2);
+        ByteBuffer v = ByteBuffer.allocate(rowStride * HEIGHT / 2);
+        random.nextBytes(y.array());
+        random.nextBytes(u.array());
+        random.nextBytes(v.array());
+
+        byte[] expected = new byte[width * HEIGHT * 3 / 2];
+        byte[] actual = new byte[expected.length];
+        scalar.yuv420ToNv21(y, u, v, rowStride, rowStride, 2, width, HEIGHT, expected);
+        striped.yuv420ToNv21(y, u, v, rowStride, rowStride, 2, width, HEIGHT, actual);
+        assertArrayEquals(expected, actual);
+
+        // the padding at the end of each row is skipped and V comes before U
+        assertEquals(y.get(rowStride), expected[width]);
+        assertEquals(v.get(0), expected[width * HEIGHT]);
+        assertEquals(u.get(0), expected[width * HEIGHT + 1]);
+        assertEquals(v.get(2), expected[width * HEIGHT + 2]);
+        assertEquals(v.get(rowStride), expected[width * HEIGHT + width]);
+    }
+
+    @Test
+    public void resizeMatchesScalar() {
+        int[] source = randomPixels(WIDTH * HEIGHT);
+        for (boolean bilinear : new boolean[]{false, true}) {
+            ImageKernels.ColumnMap columns = new ImageKernels.ColumnMap().set(5, 80, 33, bilinear);
+            int[] expected = new int[33 * 29];
+            int[] actual = new int[33 * 29];
+
+            scalar.resize(source, WIDTH, columns, 3, 55, expected, 29);
+            striped.resize(source, WIDTH, columns, 3, 55, actual, 29);
+            assertArrayEquals("bilinear " + bilinear, expected, actual);
+        }
+    }
+
+    @Test
+    public void resizeToTheSameSizeIsACopy() {
+        int[] source = randomPixels(WIDTH * HEIGHT);
+        for (boolean bilinear : new boolean[]{false, true}) {
+            int[] resized = new int[WIDTH * HEIGHT];
+            striped.resize(source, WIDTH, new ImageKernels.ColumnMap().set(0, WIDTH, WIDTH, bilinear), 0, HEIGHT, resized, HEIGHT);
+            assertArrayEquals("bilinear " + bilinear, source, resized);
+        }
+    }
+
+    @Test
+    public void normaliseMatchesScalar() {
+        int[] source = randomPixels(WIDTH * HEIGHT);
+        float[] mean = {123.675f, 116.28f, 103.53f};
+        float[] inverseStd = {1 / 58.395f, 1 / 57.12f, 1 / 57.375f};
+
+        for (TensorLayout.Order order : TensorLayout.Order.values()) {
+            for (boolean bilinear : new boolean[]{false, true}) {
+                TensorLayout layout = layout(order, TensorLayout.DataType.FLOAT32, 1.0f, 0);
+                ImageKernels.ColumnMap columns = new ImageKernels.ColumnMap().set(10, 60, layout.getWidth(), bilinear);
+
+                // the second batch entry, so the batch offset is covered too
+                ByteBuffer expected = layout.allocate();
+                ByteBuffer actual = layout.allocate();
+                scalar.normalise(source, WIDTH, columns, 1, 60, mean, inverseStd, layout, expected, expected.asFloatBuffer(), 1);
+                striped.normalise(source, WIDTH, columns, 1, 60, mean, inverseStd, layout, actual, actual.asFloatBuffer(), 1);
+                assertEquals(order + " bilinear " + bilinear, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void quantizedNormaliseMatchesScalar() {
+        int[] source = randomPixels(WIDTH * HEIGHT);
+        float[] mean = {127.5f, 127.5f, 127.5f};
+        float[] inverseStd = {1 / 127.5f, 1 / 127.5f, 1 / 127.5f};
+
+        for (TensorLayout.DataType dataType : new TensorLayout.DataType[]{TensorLayout.DataType.UINT8, TensorLayout.DataType.INT8}) {
+            TensorLayout layout = layout(TensorLayout.Order.NHWC, dataType, 1 / 128.0f, dataType == TensorLayout.DataType.INT8 ? 0 : 128);
+            ImageKernels.ColumnMap columns = new ImageKernels.ColumnMap().set(0, WIDTH, layout.getWidth(), true);
+
+            ByteBuffer expected = layout.allocate();
+            ByteBuffer actual = layout.allocate();
+            scalar.normalise(source, WIDTH, columns, 0, HEIGHT, mean, inverseStd, layout, expected, null, 0);
+            striped.normalise(source, WIDTH, columns, 0, HEIGHT, mean, inverseStd, layout, actual, null, 0);
+            assertEquals(dataType.toString(), expected, actual);
+        }
+    }
+
+    @Test
+    public void normaliseOfAConstantImage() {
+        int[] source = new int[WIDTH * HEIGHT];
+        Arrays.fill(source, 0xFF102030);
+        float[] mean = {10.0f, 20.0f, 30.0f};
+        float[] inverseStd = {0.5f, 0.25f, 0.125f};
+
+        TensorLayout layout = layout(TensorLayout.Order.NCHW, TensorLayout.DataType.FLOAT32, 1.0f, 0);
+        ByteBuffer tensor = layout.allocate();
+        FloatBuffer floats = tensor.asFloatBuffer();
+        striped.normalise(source, WIDTH, new ImageKernels.ColumnMap().set(0, WIDTH, layout.getWidth(), true), 0, HEIGHT,
+                mean, inverseStd, layout, tensor, floats, 0);
+
+        int plane = layout.getWidth() * layout.getHeight();
+        float[] expected = {(0x10 - 10.0f) * 0.5f, (0x20 - 20.0f) * 0.25f, (0x30 - 30.0f) * 0.125f};
+        for (int c = 0; c < 3; c++) {
+            for (int i = 0; i < plane; i++) assertEquals(expected[c], floats.get(c * plane + i), 1e-6f);
+        }
+    }
+
+    /***
+     * Method to create a 2 x 3 x 40 x 31 tensor layout
+     * @param order the dimension order
+     * @param dataType the element type
+     * @param scale the quantization scale
+     * @param zeroPoint the quantization zero point
+     * @return the layout
+     */
+    private static TensorLayout layout(TensorLayout.Order order, TensorLayout.DataType dataType, float scale, int zeroPoint) {
+        int[] shape = order == TensorLayout.Order.NHWC ? new int[]{2, 31, 40, 3} : new int[]{2, 3, 31, 40};
+        return new TensorLayout(order, dataType, shape, scale, zeroPoint);
+    }
+}
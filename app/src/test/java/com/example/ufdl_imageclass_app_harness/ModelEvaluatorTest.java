@@ -0,0 +1,189 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/***
+ * Runs the evaluation over the fixture dataset in src/test/resources/evaluation with a stub model, which
+ * classifies the solid colour images by their nearest class colour, and checks the report. The fixture has:
+ * daisy/white.png and rose/red.png and sunflower/yellow.png, ranked first;
+ * rose/yellow.png, whose label is third; daisy/red.png, whose label is outside the top 3;
+ * sunflower/broken.jpg, which can't be decoded; tulip/white.png, which isn't a class of the model;
+ * and daisy/notes.txt, which isn't an image.
+ */
+
+public class ModelEvaluatorTest {
+    private static final String MODEL = "Colours.tflite";
+    private static final String[] CLASSES = {"Daisy", "rose", "sunflower", "dandelion"};
+    private static final int[] CLASS_COLOURS = {0xFFFFFF, 0xC8141E, 0xF0C814, 0xFADC00};
+
+    /***
+     * A stub model predicting the classes whose colours are nearest to an image's first pixel. The n-th image it
+     * classifies takes n milliseconds.
+     */
+    private static class ColourClassification extends ModelEvaluator.ImageClassification {
+        private int classified;
+        private int warmUps;
+
+        ColourClassification() {
+            super(null, null);
+        }
+
+        @Override
+        boolean warmUp(byte[] encoded) {
+            warmUps++;
+            return classify(encoded) != null;
+        }
+
+        @Override
+        List<Prediction> classify(byte[] encoded) {
+            BufferedImage image;
+            try {
+                image = ImageIO.read(new ByteArrayInputStream(encoded));
+            } catch (IOException e) {
+                return null;
+            }
+            if (image == null) return null;
+
+            int rgb = image.getRGB(0, 0);
+            List<Prediction> predictions = new ArrayList<>();
+            for (int i = 0; i < CLASSES.length; i++) {
+                predictions.add(new Prediction(CLASSES[i], 1.0f / (1.0f + distance(rgb, CLASS_COLOURS[i]))));
+            }
+            predictions.sort((a, b) -> Float.compare(b.getConfidence(), a.getConfidence()));
+            classified++;
+            return predictions.subList(0, 3);
+        }
+
+        @Override
+        long getInferenceNanos() {
+            return (classified - warmUps) * 1000000L;
+        }
+
+        @Override
+        void close() {
+        }
+
+        /***
+         * Method to get the distance between two colours
+         * @param a the first RGB colour
+         * @param b the second RGB colour
+         * @return the Euclidean distance of the channels
+         */
+        private static float distance(int a, int b) {
+            float sum = 0.0f;
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int difference = ((a >> shift) & 0xFF) - ((b >> shift) & 0xFF);
+                sum += difference * difference;
+            }
+            return (float) Math.sqrt(sum);
+        }
+    }
+
+    /***
+     * Method to create an evaluator of the fixture dataset which loads the stub model
+     * @return the evaluator
+     * @throws URISyntaxException if the fixture cannot be located
+     */
+    private static ModelEvaluator fixtureEvaluator() throws URISyntaxException {
+        File dataset = new File(ModelEvaluatorTest.class.getResource("/evaluation").toURI());
+        return new ModelEvaluator(null, dataset, null, message -> { }) {
+            @Override
+            String describeDevice() {
+                return "JVM";
+            }
+
+            @Override
+            ClassifierDetails loadDetails(String model) {
+                if (!model.equals(MODEL)) return null;
+                try {
+                    return new ObjectMapper().readValue("{\"name\": \"" + MODEL + "\", \"width\": 4, \"height\": 4,"
+                            + " \"classes\": [\"Daisy\", \"rose\", \"sunflower\", \"dandelion\"]}", ClassifierDetails.class);
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+
+            @Override
+            ImageClassification load(String model, ClassifierDetails details, EvaluationReport.ModelResult result) {
+                result.plan = "stub";
+                return new ColourClassification();
+            }
+
+            @Override
+            long nativeHeapBytes() {
+                return 0;
+            }
+
+            @Override
+            long residentSetBytes() {
+                return 0;
+            }
+        };
+    }
+
+    @Test
+    public void reportsAccuracyAndLatencies() throws URISyntaxException {
+        EvaluationReport report = fixtureEvaluator().evaluate(Collections.singletonList(MODEL));
+        assertEquals("JVM", report.device);
+        assertEquals(1, report.models.size());
+
+        EvaluationReport.ModelResult result = report.models.get(0);
+        assertNull(result.error);
+        assertEquals(MODEL, result.model);
+        assertEquals("TensorFlow Lite", result.framework);
+        assertEquals("stub", result.plan);
+        assertEquals(5, result.images);
+        assertEquals(0, result.cachedImages);
+        assertEquals(1, result.unmatchedImages);
+        assertEquals(3, result.topK);
+        assertEquals(3 / 5.0f, result.top1Accuracy, 1e-6f);
+        assertEquals(4 / 5.0f, result.topKAccuracy, 1e-6f);
+
+        // the five images took 1 to 5 ms
+        assertEquals(3.0f, result.meanLatencyMs, 1e-3f);
+        assertEquals(3.0f, result.p50LatencyMs, 1e-3f);
+        assertEquals(5.0f, result.p90LatencyMs, 1e-3f);
+        assertEquals(5.0f, result.p99LatencyMs, 1e-3f);
+        assertEquals(5.0f, result.maxLatencyMs, 1e-3f);
+        assertEquals(5 / 0.015f, result.inferenceThroughput, 1e-1f);
+    }
+
+    @Test
+    public void reportIsJson() throws URISyntaxException, IOException {
+        EvaluationReport report = fixtureEvaluator().evaluate(Collections.singletonList(MODEL));
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode json = mapper.readTree(mapper.writeValueAsString(report));
+
+        assertEquals(report.dataset, json.get("dataset").asText());
+        JsonNode model = json.get("models").get(0);
+        assertEquals(MODEL, model.get("model").asText());
+        assertEquals(5, model.get("images").asInt());
+        assertEquals(0.6, model.get("top1Accuracy").asDouble(), 1e-6);
+    }
+
+    @Test
+    public void modelWithoutJsonIsReportedAsAnError() throws URISyntaxException {
+        EvaluationReport report = fixtureEvaluator().evaluate(Collections.singletonList("Missing.pt"));
+        EvaluationReport.ModelResult result = report.models.get(0);
+        assertEquals("Missing model JSON", result.error);
+        assertEquals("PyTorch Mobile", result.framework);
+        assertEquals(0, result.images);
+    }
+}
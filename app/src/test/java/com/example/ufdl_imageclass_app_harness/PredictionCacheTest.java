@@ -0,0 +1,137 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/***
+ * Tests that PredictionCache returns what was stored, survives a reopen and evicts the least recently used
+ * entries once it outgrows its budget.
+ */
+
+public class PredictionCacheTest {
+    //the record length of a single prediction labelled "daisy": two hashes, a count, a UTF label and a float
+    private static final int RECORD_BYTES = 4 + 16 + 1 + 2 + 5 + 4;
+    private static final long MODEL = 7L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /***
+     * Method to create the predictions stored for an image
+     * @param confidence the confidence of the prediction
+     * @return a single "daisy" prediction
+     */
+    private static List<Prediction> daisy(float confidence) {
+        return Collections.singletonList(new Prediction("daisy", confidence));
+    }
+
+    /***
+     * Method to check a cached lookup against the predictions stored by daisy
+     * @param predictions the cached predictions
+     * @param confidence the stored confidence
+     */
+    private static void assertDaisy(List<Prediction> predictions, float confidence) {
+        assertNotNull(predictions);
+        assertEquals(1, predictions.size());
+        assertEquals("daisy", predictions.get(0).getLabel());
+        assertEquals(confidence, predictions.get(0).getConfidence(), 0.0f);
+    }
+
+    @Test
+    public void returnsStoredPredictions() throws IOException {
+        PredictionCache cache = new PredictionCache(folder.newFile("cache"), 1024);
+        List<Prediction> predictions = Arrays.asList(new Prediction("rose", 0.75f), new Prediction("tulip", 0.25f));
+        cache.put(1L, MODEL, predictions);
+
+        List<Prediction> cached = cache.get(1L, MODEL);
+        assertNotNull(cached);
+        assertEquals(2, cached.size());
+        assertEquals("rose", cached.get(0).getLabel());
+        assertEquals(0.75f, cached.get(0).getConfidence(), 0.0f);
+        assertEquals("tulip", cached.get(1).getLabel());
+        assertEquals(0.25f, cached.get(1).getConfidence(), 0.0f);
+
+        // the same image under another model, and another image, are misses
+        assertNull(cache.get(1L, MODEL + 1));
+        assertNull(cache.get(2L, MODEL));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        cache.close();
+    }
+
+    @Test
+    public void laterPutReplacesEntry() throws IOException {
+        PredictionCache cache = new PredictionCache(folder.newFile("cache"), 1024);
+        cache.put(1L, MODEL, daisy(0.5f));
+        cache.put(1L, MODEL, daisy(0.9f));
+        assertDaisy(cache.get(1L, MODEL), 0.9f);
+        cache.close();
+    }
+
+    @Test
+    public void survivesReopen() throws IOException {
+        File file = folder.newFile("cache");
+        PredictionCache cache = new PredictionCache(file, 1024);
+        for (int i = 0; i < 5; i++) cache.put(i, MODEL, daisy(i / 10.0f));
+        cache.close();
+
+        cache = new PredictionCache(file, 1024);
+        for (int i = 0; i < 5; i++) assertDaisy(cache.get(i, MODEL), i / 10.0f);
+        cache.close();
+    }
+
+    @Test
+    public void truncatedRecordIsDropped() throws IOException {
+        File file = folder.newFile("cache");
+        PredictionCache cache = new PredictionCache(file, 1024);
+        cache.put(1L, MODEL, daisy(0.1f));
+        cache.put(2L, MODEL, daisy(0.2f));
+        cache.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        cache = new PredictionCache(file, 1024);
+        assertDaisy(cache.get(1L, MODEL), 0.1f);
+        assertNull(cache.get(2L, MODEL));
+        cache.close();
+        assertEquals(RECORD_BYTES, file.length());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        File file = folder.newFile("cache");
+        PredictionCache cache = new PredictionCache(file, 10 * (RECORD_BYTES - 4));
+        for (int i = 0; i < 10; i++) cache.put(i, MODEL, daisy(i / 10.0f));
+
+        // touching the oldest entry keeps it over the untouched ones
+        assertDaisy(cache.get(0L, MODEL), 0.0f);
+
+        // the eleventh entry goes over budget and evicts down to three quarters of it, i.e. seven entries
+        cache.put(10L, MODEL, daisy(1.0f));
+        assertDaisy(cache.get(0L, MODEL), 0.0f);
+        for (int i = 1; i <= 4; i++) assertNull(cache.get(i, MODEL));
+        for (int i = 5; i <= 10; i++) assertDaisy(cache.get(i, MODEL), i / 10.0f);
+        cache.close();
+
+        // the compacted file only holds the survivors, which still read back
+        assertEquals(7 * RECORD_BYTES, file.length());
+        cache = new PredictionCache(file, 10 * (RECORD_BYTES - 4));
+        assertDaisy(cache.get(0L, MODEL), 0.0f);
+        assertDaisy(cache.get(10L, MODEL), 1.0f);
+        assertNull(cache.get(1L, MODEL));
+        cache.close();
+    }
+}
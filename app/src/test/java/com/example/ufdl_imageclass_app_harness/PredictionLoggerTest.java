@@ -0,0 +1,130 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import android.graphics.Bitmap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/***
+ * Tests that labels logged through a LoggingClassifier resolve in the sidecar, whether the wrapped classifier
+ * declared them up front or they were only seen in its predictions and queued from the frame thread.
+ */
+
+public class PredictionLoggerTest {
+    private static final String MODEL = "flowers.tflite";
+    private static final String[] CLASSES = {"daisy", "rose", "sunflower"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /***
+     * A stub classifier which returns the predictions it was given for each frame in turn
+     */
+    private static class ScriptedClassifier extends Classifier {
+        private final String[] classes;
+        private final String[][] frames;
+        private int frame;
+
+        ScriptedClassifier(String[] classes, String[]... frames) {
+            this.classes = classes;
+            this.frames = frames;
+        }
+
+        @Override
+        public List<Prediction> topKPredictions(Bitmap bitmap) {
+            List<Prediction> predictions = new ArrayList<>();
+            String[] labels = frames[frame++];
+            for (int i = 0; i < labels.length; i++) predictions.add(new Prediction(labels[i], 1.0f - i * 0.25f));
+            return predictions;
+        }
+
+        @Override
+        public Prediction predict(Bitmap bitmap) {
+            return topKPredictions(bitmap).get(0);
+        }
+
+        @Override
+        public String[] getClasses() {
+            return classes;
+        }
+    }
+
+    /***
+     * Method to run a scripted classifier through a logging classifier and convert the log
+     * @param classifier the scripted classifier
+     * @return the logged frames' labels
+     * @throws IOException if the log cannot be written or read
+     */
+    private List<List<String>> logAndConvert(Classifier classifier, int frames) throws IOException {
+        File directory = folder.newFolder();
+        PredictionLogger logger = new PredictionLogger(directory, "test", 16, 1 << 20, PredictionLogger.OverflowPolicy.BLOCK);
+        LoggingClassifier logging = new LoggingClassifier(classifier, logger, MODEL);
+        for (int i = 0; i < frames; i++) logging.topKPredictions(null);
+        logger.close();
+
+        ObjectMapper mapper = new ObjectMapper();
+        PredictionLogger.Sidecar sidecar = mapper.readValue(new File(directory, "test" + PredictionLogger.SIDECAR_SUFFIX),
+                PredictionLogger.Sidecar.class);
+        StringWriter out = new StringWriter();
+        new PredictionLogConverter(sidecar, false, out).convert(new File(directory, "test-0000.bin"));
+
+        List<List<String>> labels = new ArrayList<>();
+        for (String line : out.toString().split("\n")) {
+            if (line.isEmpty()) continue;
+            JsonNode record = mapper.readTree(line);
+            assertEquals(MODEL, record.get("model").asText());
+            List<String> frameLabels = new ArrayList<>();
+            for (JsonNode prediction : record.get("predictions")) frameLabels.add(prediction.get("label").asText());
+            labels.add(frameLabels);
+        }
+        return labels;
+    }
+
+    @Test
+    public void declaredLabelsResolve() throws IOException {
+        Classifier classifier = new ScriptedClassifier(CLASSES,
+                new String[]{"rose", "daisy"}, new String[]{"sunflower", "rose", "daisy"});
+        assertEquals(Arrays.asList(Arrays.asList("rose", "daisy"), Arrays.asList("sunflower", "rose", "daisy")),
+                logAndConvert(classifier, 2));
+    }
+
+    @Test
+    public void unseenLabelsAreAddedToTheSidecar() throws IOException {
+        // e.g. a remote server predicting labels its fallback model doesn't have
+        Classifier classifier = new ScriptedClassifier(CLASSES,
+                new String[]{"tulip", "rose"}, new String[]{"Rose", "tulip", "daisy"}, new String[]{"tulip"});
+        assertEquals(Arrays.asList(Arrays.asList("tulip", "rose"), Arrays.asList("Rose", "tulip", "daisy"),
+                Arrays.asList("tulip")), logAndConvert(classifier, 3));
+    }
+
+    @Test
+    public void classifierWithoutClassesLearnsItsLabels() throws IOException {
+        Classifier classifier = new ScriptedClassifier(null,
+                new String[]{"a", "b"}, new String[]{"b", "c"}, new String[]{"c", "a"});
+        assertEquals(Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("b", "c"), Arrays.asList("c", "a")),
+                logAndConvert(classifier, 3));
+    }
+
+    @Test
+    public void addLabelQueuesWithoutBlocking() throws IOException {
+        PredictionLogger logger = new PredictionLogger(folder.newFolder(), "test", 16, 1 << 20,
+                PredictionLogger.OverflowPolicy.DROP);
+        int model = logger.registerModel(MODEL, CLASSES);
+        assertTrue(logger.addLabel(model, CLASSES.length, "tulip"));
+        logger.close();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/***
+ * Tests of the request and response format shared by RemoteClassifier and tools/remote_inference_server.py
+ */
+
+public class RemoteProtocolTest {
+
+    @Test
+    public void writesLengthPrefixedImages() throws IOException {
+        List<byte[]> images = Arrays.asList(new byte[]{1, 2, 3}, new byte[0], new byte[]{(byte) 0xFF});
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RemoteProtocol.writeBatch(out, images);
+
+        byte[] body = out.toByteArray();
+        assertEquals(RemoteProtocol.bodyLength(images), body.length);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        assertEquals(3, in.readInt());
+        for (byte[] image : images) {
+            assertEquals(image.length, in.readInt());
+            byte[] read = new byte[image.length];
+            in.readFully(read);
+            assertArrayEquals(image, read);
+        }
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void emptyBatchIsOnlyTheCount() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RemoteProtocol.writeBatch(out, Collections.<byte[]>emptyList());
+        assertArrayEquals(new byte[]{0, 0, 0, 0}, out.toByteArray());
+    }
+
+    @Test
+    public void readsOneListOfPredictionsPerImage() throws IOException {
+        String json = "{\"predictions\": [[{\"label\": \"daisy\", \"confidence\": 0.75}, {\"label\": \"rose\", \"confidence\": 0.2}],"
+                + " [{\"label\": \"tulip\", \"confidence\": 0.5, \"extra\": 1}]], \"model\": \"ignored\"}";
+        List<List<RemoteProtocol.RemotePrediction>> predictions =
+                RemoteProtocol.readPredictions(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(2, predictions.size());
+        assertEquals(2, predictions.get(0).size());
+        assertEquals("daisy", predictions.get(0).get(0).getLabel());
+        assertEquals(0.75f, predictions.get(0).get(0).getConfidence(), 0.0f);
+        assertEquals("rose", predictions.get(0).get(1).getLabel());
+        assertEquals("tulip", predictions.get(1).get(0).getLabel());
+        assertEquals(0.5f, predictions.get(1).get(0).getConfidence(), 0.0f);
+    }
+
+    @Test
+    public void responseWithoutPredictions() throws IOException {
+        assertNull(RemoteProtocol.readPredictions(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8))));
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.ufdl_imageclass_app_harness;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/***
+ * Tests that recorded frames replayed through the conversion reach the classifier as the colours they were
+ * recorded as, whether they were recorded as padded YUV_420_888 planes or NV21, and that the labels don't depend
+ * on the number of conversion threads or the mapped segment size.
+ */
+
+public class ReplayBenchmarkTest {
+    private static final int JPEG = 0x100;
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 12;
+    private static final int Y_ROW_STRIDE = 20;
+    private static final int UV_ROW_STRIDE = 20;
+    private static final int UV_PIXEL_STRIDE = 2;
+
+    private static final String[] LABELS = {"grey", "red", "blue"};
+    private static final int[][] COLOURS = {{128, 128, 128}, {255, 0, 0}, {0, 0, 255}};
+    private static final int[][] YUV = {{128, 128, 128}, {76, 85, 255}, {29, 255, 107}};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /***
+     * Method to write a recording of solid colour frames: grey, red and blue as padded YUV_420_888 planes,
+     * red as NV21 and a JPEG frame which can't be replayed
+     * @param file the recording file
+     * @throws IOException if the recording cannot be written
+     */
+    private static void writeRecording(File file) throws IOException {
+        try (FrameWriter writer = new FrameWriter(file)) {
+            for (int colour = 0; colour < YUV.length; colour++) {
+                byte[] y = new byte[Y_ROW_STRIDE * HEIGHT];
+                byte[] u = new byte[UV_ROW_STRIDE * HEIGHT / 2];
+                byte[] v = new byte[UV_ROW_STRIDE * HEIGHT / 2];
+                for (int row = 0; row < HEIGHT; row++) {
+                    Arrays.fill(y, row * Y_ROW_STRIDE, row * Y_ROW_STRIDE + WIDTH, (byte) YUV[colour][0]);
+                }
+                for (int row = 0; row < HEIGHT / 2; row++) {
+                    for (int x = 0; x < WIDTH / 2; x++) {
+                        u[row * UV_ROW_STRIDE + x * UV_PIXEL_STRIDE] = (byte) YUV[colour][1];
+                        v[row * UV_ROW_STRIDE + x * UV_PIXEL_STRIDE] = (byte) YUV[colour][2];
+                    }
+                }
+
+                ByteBuffer[] planes = {ByteBuffer.wrap(y), ByteBuffer.wrap(u), ByteBuffer.wrap(v)};
+                writer.write(colour, WIDTH, HEIGHT, 0, 0, ReplayBenchmark.YUV_420_888, planes,
+                        new int[]{Y_ROW_STRIDE, UV_ROW_STRIDE, UV_ROW_STRIDE}, new int[]{1, UV_PIXEL_STRIDE, UV_PIXEL_STRIDE}, 3);
+            }
+
+            byte[] nv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+            Arrays.fill(nv21, 0, WIDTH * HEIGHT, (byte) YUV[1][0]);
+            for (int i = WIDTH * HEIGHT; i < nv21.length; i += 2) {
+                nv21[i] = (byte) YUV[1][2];
+                nv21[i + 1] = (byte) YUV[1][1];
+            }
+            writer.write(3, WIDTH, HEIGHT, 0, 0, ReplayBenchmark.NV21, new ByteBuffer[]{ByteBuffer.wrap(nv21)},
+                    new int[]{WIDTH}, new int[]{1}, 1);
+
+            writer.write(4, WIDTH, HEIGHT, 0, 0, JPEG, new ByteBuffer[]{ByteBuffer.wrap(new byte[16])},
+                    new int[]{0}, new int[]{0}, 1);
+        }
+    }
+
+    /***
+     * Method to label a frame with the class colour nearest to every one of its pixels
+     * @param argb the ARGB pixels of the frame
+     * @param width the frame width
+     * @param height the frame height
+     * @return the label, or "mixed" if the pixels don't agree
+     */
+    private static String nearestColour(int[] argb, int width, int height) {
+        String label = null;
+        for (int i = 0; i < width * height; i++) {
+            int best = 0;
+            int bestDistance = Integer.MAX_VALUE;
+            for (int c = 0; c < COLOURS.length; c++) {
+                int red = ((argb[i] >> 16) & 0xFF) - COLOURS[c][0];
+                int green = ((argb[i] >> 8) & 0xFF) - COLOURS[c][1];
+                int blue = (argb[i] & 0xFF) - COLOURS[c][2];
+                int distance = red * red + green * green + blue * blue;
+                if (distance < bestDistance) {
+                    best = c;
+                    bestDistance = distance;
+                }
+            }
+            if (label == null) label = LABELS[best];
+            else if (!label.equals(LABELS[best])) return "mixed";
+        }
+        return label;
+    }
+
+    @Test
+    public void replaysFramesThroughConversionIntoClassifier() throws IOException {
+        File file = folder.newFile("frames");
+        writeRecording(file);
+
+        ImageKernels kernels = new ImageKernels(1);
+        try {
+            ReplayBenchmark.Result result = ReplayBenchmark.run(file, kernels, ReplayBenchmarkTest::nearestColour);
+            assertEquals(Arrays.asList("grey", "red", "blue", "red"), result.labels);
+            assertEquals(Arrays.asList(0L, 1L, 2L, 3L), result.times);
+            assertEquals(4, result.convertNanos.size());
+            assertEquals(4, result.classifyNanos.size());
+            assertEquals(1, result.skipped);
+        } finally {
+            kernels.close();
+        }
+    }
+
+    @Test
+    public void labelsDontDependOnThreadsOrSegments() throws IOException {
+        File file = folder.newFile("frames");
+        writeRecording(file);
+
+        ImageKernels single = new ImageKernels(1);
+        ImageKernels parallel = new ImageKernels(4, 1);
+        try {
+            ReplayBenchmark.Result expected = ReplayBenchmark.run(file, single, ReplayBenchmarkTest::nearestColour);
+            for (long segmentBytes : new long[]{1, 500, FrameReplayer.SEGMENT_BYTES}) {
+                ReplayBenchmark.Result result = ReplayBenchmark.run(file, segmentBytes, parallel,
+                        ReplayBenchmarkTest::nearestColour);
+                assertEquals(expected.labels, result.labels);
+                assertEquals(expected.skipped, result.skipped);
+            }
+        } finally {
+            single.close();
+            parallel.close();
+        }
+    }
+
+    @Test
+    public void emptyRecordingReplaysNothing() throws IOException {
+        File file = folder.newFile("frames");
+        new FrameWriter(file).close();
+
+        ImageKernels kernels = new ImageKernels(1);
+        try {
+            ReplayBenchmark.Result result = ReplayBenchmark.run(file, kernels, ReplayBenchmarkTest::nearestColour);
+            assertEquals(Collections.<String>emptyList(), result.labels);
+            assertEquals(0, result.skipped);
+        } finally {
+            kernels.close();
+        }
+    }
+}
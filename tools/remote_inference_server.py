@@ -0,0 +1,95 @@
+#!/usr/bin/env python3
+"""
+A stand-in for a remote inference server, speaking the batch protocol of RemoteClassifier (see RemoteProtocol).
+
+It doesn't run a model: each image gets predictions derived from a hash of its bytes, drawn from the
+classes of a model JSON, so the app can be tested end to end without a GPU box. An artificial delay
+makes it possible to exercise the local fallback.
+
+    python3 tools/remote_inference_server.py --labels app/src/main/assets/Flowers.json --delay-ms 40
+    adb reverse tcp:8000 tcp:8000
+"""
+
+import argparse
+import hashlib
+import json
+import struct
+import time
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+BATCH_CONTENT_TYPE = "application/x-ufdl-image-batch"
+TOP_K = 3
+
+
+def read_batch(body):
+    """Splits a request body into the encoded images."""
+    (count,) = struct.unpack_from(">i", body, 0)
+    offset = 4
+    images = []
+    for _ in range(count):
+        (length,) = struct.unpack_from(">i", body, offset)
+        offset += 4
+        images.append(body[offset:offset + length])
+        offset += length
+    return images
+
+
+def predict(image, classes):
+    """Returns deterministic pseudo-predictions for an image."""
+    digest = hashlib.sha1(image).digest()
+    predictions = []
+    remaining = 1.0
+    for i in range(TOP_K):
+        label = classes[(digest[i * 2] * 256 + digest[i * 2 + 1]) % len(classes)]
+        confidence = remaining * (0.5 + digest[10 + i] / 512.0)
+        remaining -= confidence
+        predictions.append({"label": label, "confidence": round(confidence, 4)})
+    return predictions
+
+
+def make_handler(classes, delay_ms):
+    class Handler(BaseHTTPRequestHandler):
+        # HTTP/1.1 keeps connections alive between requests, as the app's senders expect
+        protocol_version = "HTTP/1.1"
+
+        def do_POST(self):
+            length = int(self.headers.get("Content-Length", 0))
+            body = self.rfile.read(length)
+            if self.headers.get("Content-Type") != BATCH_CONTENT_TYPE:
+                self.send_error(415, "Expected " + BATCH_CONTENT_TYPE)
+                return
+
+            if delay_ms > 0:
+                time.sleep(delay_ms / 1000.0)
+
+            images = read_batch(body)
+            response = json.dumps({"predictions": [predict(image, classes) for image in images]}).encode("utf-8")
+            self.send_response(200)
+            self.send_header("Content-Type", "application/json")
+            self.send_header("Content-Length", str(len(response)))
+            self.end_headers()
+            self.wfile.write(response)
+
+        def log_message(self, format, *args):
+            pass
+
+    return Handler
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("--port", type=int, default=8000)
+    parser.add_argument("--labels", required=True, help="model JSON whose classes are used for the predictions")
+    parser.add_argument("--delay-ms", type=float, default=0, help="added to every request to simulate a slow server")
+    args = parser.parse_args()
+
+    with open(args.labels) as f:
+        classes = json.load(f)["classes"]
+
+    server = ThreadingHTTPServer(("0.0.0.0", args.port), make_handler(classes, args.delay_ms))
+    print("Listening on port %d with %d classes" % (args.port, len(classes)))
+    server.serve_forever()
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,80 @@
+#!/usr/bin/env python3
+"""
+Tests of the stand-in remote inference server, run with:
+
+    python3 -m unittest discover -s tools
+"""
+
+import json
+import struct
+import threading
+import unittest
+import urllib.error
+import urllib.request
+from http.server import ThreadingHTTPServer
+
+import remote_inference_server as server
+
+CLASSES = ["daisy", "rose", "tulip", "sunflower", "dandelion"]
+
+
+def batch(*images):
+    """Encodes images as a request body, as RemoteProtocol.writeBatch does."""
+    body = struct.pack(">i", len(images))
+    for image in images:
+        body += struct.pack(">i", len(image)) + image
+    return body
+
+
+class ReadBatchTest(unittest.TestCase):
+    def test_splits_the_images(self):
+        self.assertEqual(server.read_batch(batch(b"first", b"", b"third")), [b"first", b"", b"third"])
+
+    def test_empty_batch(self):
+        self.assertEqual(server.read_batch(batch()), [])
+
+
+class PredictTest(unittest.TestCase):
+    def test_top_k_predictions_of_known_classes(self):
+        predictions = server.predict(b"image", CLASSES)
+        self.assertEqual(len(predictions), server.TOP_K)
+        for prediction in predictions:
+            self.assertIn(prediction["label"], CLASSES)
+        confidences = [prediction["confidence"] for prediction in predictions]
+        self.assertEqual(confidences, sorted(confidences, reverse=True))
+        self.assertLessEqual(sum(confidences), 1.0)
+
+    def test_deterministic(self):
+        self.assertEqual(server.predict(b"image", CLASSES), server.predict(b"image", CLASSES))
+
+
+class ServerTest(unittest.TestCase):
+    def setUp(self):
+        self.httpd = ThreadingHTTPServer(("127.0.0.1", 0), server.make_handler(CLASSES, 0))
+        self.thread = threading.Thread(target=self.httpd.serve_forever, daemon=True)
+        self.thread.start()
+        self.url = "http://127.0.0.1:%d/classify" % self.httpd.server_address[1]
+
+    def tearDown(self):
+        self.httpd.shutdown()
+        self.httpd.server_close()
+
+    def post(self, body, content_type=server.BATCH_CONTENT_TYPE):
+        request = urllib.request.Request(self.url, data=body, method="POST",
+                                         headers={"Content-Type": content_type, "X-Image-Type": "image/jpeg"})
+        with urllib.request.urlopen(request, timeout=5) as response:
+            return json.loads(response.read().decode("utf-8"))
+
+    def test_one_list_of_predictions_per_image_in_order(self):
+        response = self.post(batch(b"a", b"b", b"c"))
+        self.assertEqual(response["predictions"],
+                         [server.predict(image, CLASSES) for image in (b"a", b"b", b"c")])
+
+    def test_rejects_other_content_types(self):
+        with self.assertRaises(urllib.error.HTTPError) as error:
+            self.post(batch(b"a"), content_type="image/jpeg")
+        self.assertEqual(error.exception.code, 415)
+
+
+if __name__ == "__main__":
+    unittest.main()